@@ -0,0 +1,68 @@
+package io.github.marcsanzdev.chestseparators.bench;
+
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.ColorTable;
+
+import java.util.Random;
+
+// Deterministic layouts and slot grids shared by the benchmarks.
+final class BenchLayouts {
+
+    static final int[] COLORS = {
+            0xFFFFFFFF, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFF00, 0xFF00FFFF, 0xFFFF00FF, 0xFF808080
+    };
+
+    // Resolves the refs of every generated layout; most COLORS are not standard and end up as escapes.
+    static final ColorTable TABLE = new ColorTable();
+
+    private BenchLayouts() {}
+
+    // Paints 'fillPercent' of the slots; painted slots get a random subset of edges (never empty).
+    static ChestLayout randomLayout(int slots, int fillPercent, long seed) {
+        Random random = new Random(seed);
+        ChestLayout layout = new ChestLayout(slots);
+        int painted = slots * fillPercent / 100;
+        int[] order = shuffledSlots(slots, random);
+        for (int i = 0; i < painted; i++) {
+            int slot = order[i];
+            int edges = 1 + random.nextInt(15);
+            for (int edge = 0; edge < ChestLayout.EDGES_PER_SLOT; edge++) {
+                if ((edges & (1 << edge)) != 0) {
+                    layout.setRef(slot, edge, TABLE.refForColor(COLORS[random.nextInt(COLORS.length)]));
+                }
+            }
+        }
+        return layout;
+    }
+
+    private static int[] shuffledSlots(int slots, Random random) {
+        int[] order = new int[slots];
+        for (int i = 0; i < slots; i++) order[i] = i;
+        for (int i = slots - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    // Screen coordinates of a vanilla chest grid (9 columns, 18px pitch, origin 8,18).
+    static int[] slotX(int slots) {
+        int[] x = new int[slots];
+        for (int i = 0; i < slots; i++) x[i] = 8 + (i % 9) * 18;
+        return x;
+    }
+
+    static int[] slotY(int slots) {
+        int[] y = new int[slots];
+        for (int i = 0; i < slots; i++) y[i] = 18 + (i / 9) * 18;
+        return y;
+    }
+
+    static int[] slotIndices(int slots) {
+        int[] indices = new int[slots];
+        for (int i = 0; i < slots; i++) indices[i] = i;
+        return indices;
+    }
+}
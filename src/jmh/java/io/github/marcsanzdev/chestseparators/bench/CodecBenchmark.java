@@ -0,0 +1,83 @@
+package io.github.marcsanzdev.chestseparators.bench;
+
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.LayoutCodec;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Indexed layout format against the legacy gzip'd NBT one: encode cost, decode cost and payload size.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    @Param({"27", "54"})
+    public int slots;
+
+    @Param({"25", "50", "100"})
+    public int fillPercent;
+
+    private ChestLayout layout;
+    private ChestLayout scratch;
+    private byte[] compact;
+    private byte[] legacy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        layout = BenchLayouts.randomLayout(slots, fillPercent, 11L);
+        scratch = new ChestLayout(slots);
+        compact = LayoutCodec.encode(layout, BenchLayouts.TABLE);
+        legacy = encodeLegacy(layout);
+        System.out.println("[ChestSeparators] payload bytes: compact=" + compact.length + " legacy=" + legacy.length);
+    }
+
+    // The format written before the compact one: { Separators: { "<slot>": [top, bottom, left, right] } }, gzip'd.
+    private static byte[] encodeLegacy(ChestLayout layout) throws IOException {
+        NbtCompound root = new NbtCompound();
+        NbtCompound separators = new NbtCompound();
+        for (int slot = layout.nextOccupied(0); slot != -1; slot = layout.nextOccupied(slot + 1)) {
+            separators.putIntArray(String.valueOf(slot), new int[]{
+                    BenchLayouts.TABLE.resolve(layout.getRef(slot, ChestLayout.EDGE_TOP)),
+                    BenchLayouts.TABLE.resolve(layout.getRef(slot, ChestLayout.EDGE_BOTTOM)),
+                    BenchLayouts.TABLE.resolve(layout.getRef(slot, ChestLayout.EDGE_LEFT)),
+                    BenchLayouts.TABLE.resolve(layout.getRef(slot, ChestLayout.EDGE_RIGHT))
+            });
+        }
+        root.put("Separators", separators);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        NbtIo.writeCompressed(root, bytes);
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeCompact() {
+        return LayoutCodec.encode(layout, BenchLayouts.TABLE);
+    }
+
+    @Benchmark
+    public ChestLayout decodeCompact() throws IOException {
+        scratch.clear();
+        LayoutCodec.decode(compact, scratch, BenchLayouts.TABLE);
+        return scratch;
+    }
+
+    @Benchmark
+    public ChestLayout decodeLegacy() throws IOException {
+        scratch.clear();
+        LayoutCodec.decode(legacy, scratch, BenchLayouts.TABLE);
+        return scratch;
+    }
+}
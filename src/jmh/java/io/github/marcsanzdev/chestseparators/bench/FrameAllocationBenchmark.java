@@ -0,0 +1,70 @@
+package io.github.marcsanzdev.chestseparators.bench;
+
+import io.github.marcsanzdev.chestseparators.client.ui.EditorOverlay;
+import io.github.marcsanzdev.chestseparators.client.ui.RectSink;
+import io.github.marcsanzdev.chestseparators.data.ChestConfigManager;
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of the editor's steady-state frame outside of Minecraft's own drawing: the EditorOverlay calls that
+// render, renderSavedLinesLayer and the previews make (sidebar and slot hit-testing, drag and area previews,
+// cached geometry replayed through the visible-area clip). The zero-allocation budget of the same frame is
+// enforced by EditorOverlayTest.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameAllocationBenchmark {
+
+    @Param({"54", "486"})
+    public int slots;
+
+    private ChestLayout layout;
+    private final EditorOverlay overlay = new EditorOverlay();
+    private final SumSink sink = new SumSink();
+    private int frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        layout = BenchLayouts.randomLayout(slots, 50, 11L);
+        overlay.setSlots(BenchLayouts.slotIndices(slots), BenchLayouts.slotX(slots), BenchLayouts.slotY(slots), slots);
+    }
+
+    @Benchmark
+    public int frame() {
+        int f = frame++;
+        // El ratón recorre el contenedor y la barra lateral
+        int mouseX = (f * 7) % 300;
+        int mouseY = (f * 13) % 200;
+        int result = overlay.sidebarControlAt(180, 0, mouseX + 0.5, mouseY + 0.5);
+
+        overlay.renderSavedLines(sink, layout, BenchLayouts.TABLE, 0, 0, 176, 166);
+        overlay.renderHoverPreview(sink, 0, 0, mouseX, mouseY, 0x88FF0000);
+        int position = overlay.slotAt(mouseX, mouseY);
+        if (position >= 0) {
+            int action = (f & 1) == 0 ? ChestConfigManager.ACTION_TOP : ChestConfigManager.ACTION_LEFT;
+            overlay.renderDragPreview(sink, 0, 0, 0, position, action, 0x88FF0000);
+            overlay.selectArea(position, 0, (f & 2) == 0, (f & 4) == 0 ? layout : null);
+            overlay.renderAreaSelection(sink, 0, 0, 0x88FFFFFF);
+        }
+        return result + sink.sum;
+    }
+
+    private static final class SumSink implements RectSink {
+        private int sum;
+
+        @Override
+        public void fill(int x1, int y1, int x2, int y2, int color) {
+            sum += x1 + y1 + x2 + y2 + color;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.marcsanzdev.chestseparators.bench;
+
+import io.github.marcsanzdev.chestseparators.client.ui.RectSink;
+import io.github.marcsanzdev.chestseparators.client.ui.SeparatorGeometry;
+import io.github.marcsanzdev.chestseparators.client.ui.SlotGrid;
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Editor hot paths without a window: the slot grid lookups behind mouse hit-testing and calculateAffectedSlots, and the line geometry
+// of renderSavedLinesLayer, replayed into a sink that only consumes the rectangles.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RenderBenchmark {
+
+    @Param({"27", "54", "486"})
+    public int slots;
+
+    @Param({"0", "25", "50", "100"})
+    public int fillPercent;
+
+    private ChestLayout layout;
+    private int[] slotIndices;
+    private int[] slotX;
+    private int[] slotY;
+    private int[] selection;
+    private SlotGrid grid;
+    private SeparatorGeometry geometry;
+    private BlackholeSink sink;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        layout = BenchLayouts.randomLayout(slots, fillPercent, 7L);
+        slotIndices = BenchLayouts.slotIndices(slots);
+        slotX = BenchLayouts.slotX(slots);
+        slotY = BenchLayouts.slotY(slots);
+        selection = new int[slots];
+        grid = new SlotGrid(slotX, slotY, slots);
+        geometry = new SeparatorGeometry();
+        geometry.build(layout, BenchLayouts.TABLE, slotIndices, slotX, slotY, slots);
+        sink = new BlackholeSink(blackhole);
+    }
+
+    // Full-row horizontal drag, the widest selection the editor produces.
+    @Benchmark
+    public int dragSelectionRow() {
+        return grid.collect(slotX[0], slotY[0], slotX[8], slotY[0], true, selection);
+    }
+
+    // Full-column vertical drag.
+    @Benchmark
+    public int dragSelectionColumn() {
+        int last = slots - 9;
+        return grid.collect(slotX[0], slotY[0], slotX[last], slotY[last], false, selection);
+    }
+
+    // Mouse event over the last slot's right edge: slot under the point plus its edge zone.
+    @Benchmark
+    public int hitTestLastSlot() {
+        int last = slots - 1;
+        int x = slotX[last] + 15;
+        int y = slotY[last] + 8;
+        int slot = grid.slotAtPoint(x, y);
+        return slot < 0 ? -1 : SlotGrid.edgeAt(x - slotX[slot], y - slotY[slot]);
+    }
+
+    // Steady-state frame: geometry is cached, only replayed.
+    @Benchmark
+    public void renderCached() {
+        if (layout.isEmpty()) return;
+        if (geometry.needsRebuild(layout, BenchLayouts.TABLE)) geometry.build(layout, BenchLayouts.TABLE, slotIndices, slotX, slotY, slots);
+        geometry.replay(sink);
+    }
+
+    // Steady-state frame of a large modded container scrolled to a six-row window.
+    @Benchmark
+    public void renderVisibleWindow() {
+        if (layout.isEmpty()) return;
+        if (geometry.needsRebuild(layout, BenchLayouts.TABLE)) geometry.build(layout, BenchLayouts.TABLE, slotIndices, slotX, slotY, slots);
+        geometry.replay(sink, 0, 18, 176, 18 + 6 * 18);
+    }
+
+    // Frame right after an edit: merge pass plus replay.
+    @Benchmark
+    public void renderAfterEdit() {
+        if (layout.isEmpty()) return;
+        geometry.markDirty();
+        geometry.build(layout, BenchLayouts.TABLE, slotIndices, slotX, slotY, slots);
+        geometry.replay(sink);
+    }
+
+    private static final class BlackholeSink implements RectSink {
+        private final Blackhole blackhole;
+
+        BlackholeSink(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void fill(int x1, int y1, int x2, int y2, int color) {
+            blackhole.consume(x1 + y1 + x2 + y2 + color);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.marcsanzdev.chestseparators.bench;
+
+import io.github.marcsanzdev.chestseparators.data.ChestKey;
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.FileSeparatorStorage;
+import io.github.marcsanzdev.chestseparators.data.LayoutCache;
+import io.github.marcsanzdev.chestseparators.data.StorageContext;
+import io.github.marcsanzdev.chestseparators.data.WriteBehindQueue;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Load / save / truncate / move of a block container layout through the file backend that ChestConfigManager
+// opens for a world session, on a temporary world folder.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageBenchmark {
+
+    private static final String DIMENSION = "minecraft:overworld";
+
+    @Param({"27", "54"})
+    public int slots;
+
+    @Param({"0", "25", "50", "100"})
+    public int fillPercent;
+
+    private Path configRoot;
+    private WriteBehindQueue writer;
+    private FileSeparatorStorage storage;
+    private ChestLayout layout;
+    private ChestLayout scratch;
+    private ChestKey key;
+    private ChestKey otherKey;
+    private boolean atOther;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        configRoot = createTempDir();
+        writer = new WriteBehindQueue();
+        storage = new FileSeparatorStorage(StorageContext.of(configRoot, "bench_world"), writer, BenchLayouts.TABLE, LayoutCache.DEFAULT_CAPACITY);
+        String world = storage.getContext().worldKey();
+        layout = BenchLayouts.randomLayout(slots, fillPercent, 42L);
+        scratch = new ChestLayout(slots);
+        key = ChestKey.block(world, DIMENSION, new BlockPos(100, 64, -200));
+        otherKey = ChestKey.block(world, DIMENSION, new BlockPos(101, 64, -200));
+        // Neighbouring containers so the region holds a realistic number of entries.
+        for (int i = 0; i < 64; i++) {
+            storage.save(ChestKey.block(world, DIMENSION, new BlockPos(i, 70, 300)),
+                    BenchLayouts.randomLayout(slots, fillPercent, i));
+        }
+        storage.flush();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetEntry() {
+        storage.save(key, layout);
+        storage.delete(otherKey);
+        // Loads have to reach the region store, not the layout cache.
+        storage.getLayoutCache().clear();
+        atOther = false;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        // Caller-thread file system calls per storage operation over the whole trial (setup included).
+        System.out.println("[ChestSeparators] " + storage.getMetrics()
+                + " fsCalls/op=" + storage.getMetrics().getFileSystemCallsPerOperation());
+        storage.close();
+        try (Stream<Path> files = Files.walk(configRoot)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("chestseparators-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public ChestLayout load() {
+        storage.load(key, scratch);
+        return scratch;
+    }
+
+    @Benchmark
+    public void save() {
+        storage.save(key, layout);
+    }
+
+    @Benchmark
+    public void truncate() {
+        storage.truncate(key, 26);
+    }
+
+    @Benchmark
+    public void move() {
+        storage.move(atOther ? otherKey : key, atOther ? key : otherKey);
+        atOther = !atOther;
+    }
+}
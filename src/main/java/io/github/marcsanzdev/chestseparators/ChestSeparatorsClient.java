@@ -1,8 +1,15 @@
 package io.github.marcsanzdev.chestseparators;
 
 import io.github.marcsanzdev.chestseparators.config.GlobalChestConfig;
+import io.github.marcsanzdev.chestseparators.data.ChestConfigManager;
 import io.github.marcsanzdev.chestseparators.event.KeyInputHandler;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientEntityEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.minecraft.client.MinecraftClient;
 
 // Implements the client-side bootstrap logic for the Fabric mod lifecycle.
 // This entry point is isolated from the dedicated server path to ensure strict separation of concerns
@@ -17,11 +24,34 @@ public class ChestSeparatorsClient implements ClientModInitializer {
         // Hydrates the global configuration state from disk immediately upon startup.
         // This preemptive loading strategy ensures that render systems have valid state access
         // during their initialization phase, preventing race conditions or uninitialized state access.
-        GlobalChestConfig.loadConfig();
+        GlobalChestConfig.loadConfig(MinecraftClient.getInstance().runDirectory.toPath().resolve("config"));
 
         // Registers the GLFW keybindings and attaches the associated event listeners
         // to the client tick loop. This establishes the input processing pipeline
         // required for user interaction with the mod's features.
         KeyInputHandler.register();
+
+        // Opens the per-world separator store (and its persisted position index) as soon as a world is joined.
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) ->
+                ChestConfigManager.getInstance().onWorldJoin());
+
+        // Separator edits are written behind by a background thread. Leaving a world or shutting the
+        // client down blocks until that queue is drained, so no layout edit is lost on exit.
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) ->
+                ChestConfigManager.getInstance().onWorldLeave());
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client ->
+                ChestConfigManager.getInstance().onWorldLeave());
+
+        // Background maintenance driven by the world tick: layouts around the player are prefetched into the
+        // cache as they move, and layouts of containers destroyed without the local player breaking them
+        // (explosions, other players, dead pack animals) are collected incrementally within a small time budget.
+        ClientTickEvents.END_WORLD_TICK.register(world ->
+                ChestConfigManager.getInstance().onWorldTick(world, MinecraftClient.getInstance().player));
+        ClientChunkEvents.CHUNK_LOAD.register((world, chunk) ->
+                ChestConfigManager.getInstance().onChunkLoad(world, chunk.getPos().x, chunk.getPos().z, MinecraftClient.getInstance().player));
+        ClientEntityEvents.ENTITY_LOAD.register((entity, world) ->
+                ChestConfigManager.getInstance().onEntityLoad(entity));
+        ClientEntityEvents.ENTITY_UNLOAD.register((entity, world) ->
+                ChestConfigManager.getInstance().onEntityUnload(entity, MinecraftClient.getInstance().player));
     }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import io.github.marcsanzdev.chestseparators.data.ChestConfigManager;
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.ColorTable;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.Arrays;
+
+// Change sets of the bulk tools over the slot grid of the open screen: the outline of a rectangle of cells, a
+// full grid over it, or the boundary of the section around a cell (flood fill through unpainted borders).
+// The result is a list of (slot array position, ACTION_* mask) pairs the editor previews and hands to
+// ChestConfigManager in one batch. All buffers are sized once per screen, so recomputing a selection every
+// frame for the preview does not allocate.
+@Environment(EnvType.CLIENT)
+public final class AreaSelection {
+
+    private final SlotGrid grid;
+    private final int[] slotIndices;
+    private final int[] slotX;
+    private final int[] slotY;
+
+    // Resultado: posición en los arrays de slots, índice del slot en el inventario y máscara de bordes
+    private final int[] positions;
+    private final int[] slots;
+    private final int[] masks;
+    private int count;
+
+    // --- RELLENO ---
+    // Cola del recorrido y marca por celda; la marca es el número de recorrido, así no hay que limpiarla
+    private final int[] queue;
+    private final int[] visited;
+    private int generation;
+
+    public AreaSelection(SlotGrid grid, int[] slotIndices, int[] slotX, int[] slotY, int slotCount) {
+        this.grid = grid;
+        this.slotIndices = slotIndices;
+        this.slotX = slotX;
+        this.slotY = slotY;
+        this.positions = new int[slotCount];
+        this.slots = new int[slotCount];
+        this.masks = new int[slotCount];
+        int cells = grid.getRows() * grid.getColumns();
+        this.queue = new int[cells];
+        this.visited = new int[cells];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int position(int i) {
+        return positions[i];
+    }
+
+    public int mask(int i) {
+        return masks[i];
+    }
+
+    // Parallel arrays of the first size() entries, in the shape ChestConfigManager.applyEdges takes.
+    public int[] slotIndices() {
+        return slots;
+    }
+
+    public int[] masks() {
+        return masks;
+    }
+
+    // Rectangle of cells spanned by two slots: its outline, or every border inside it too when fullGrid.
+    public int rectangle(int fromPosition, int toPosition, boolean fullGrid) {
+        count = 0;
+        int r0 = grid.rowOf(slotY[fromPosition]), r1 = grid.rowOf(slotY[toPosition]);
+        int c0 = grid.columnOf(slotX[fromPosition]), c1 = grid.columnOf(slotX[toPosition]);
+        int top = Math.min(r0, r1), bottom = Math.max(r0, r1);
+        int left = Math.min(c0, c1), right = Math.max(c0, c1);
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                int position = grid.slotAt(row, column);
+                if (position < 0) continue;
+                int mask = 0;
+                if (fullGrid || row == top) mask |= ChestConfigManager.ACTION_TOP;
+                if (fullGrid || row == bottom) mask |= ChestConfigManager.ACTION_BOTTOM;
+                if (fullGrid || column == left) mask |= ChestConfigManager.ACTION_LEFT;
+                if (fullGrid || column == right) mask |= ChestConfigManager.ACTION_RIGHT;
+                if (mask != 0) add(position, mask);
+            }
+        }
+        return count;
+    }
+
+    // Cells reachable from the start cell without crossing a painted border, and the borders that separate
+    // them from everything else (painted lines, holes and the edge of the container).
+    public int section(int startPosition, ChestLayout layout) {
+        count = 0;
+        int columns = grid.getColumns();
+        int start = grid.rowOf(slotY[startPosition]) * columns + grid.columnOf(slotX[startPosition]);
+        if (++generation == 0) {
+            Arrays.fill(visited, 0);
+            generation = 1;
+        }
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        visited[start] = generation;
+        while (head < tail) {
+            int cell = queue[head++];
+            int row = cell / columns, column = cell % columns;
+            int slot = slotIndices[grid.slotAt(row, column)];
+            tail = visit(layout, slot, row - 1, column, ChestLayout.EDGE_TOP, ChestLayout.EDGE_BOTTOM, tail);
+            tail = visit(layout, slot, row + 1, column, ChestLayout.EDGE_BOTTOM, ChestLayout.EDGE_TOP, tail);
+            tail = visit(layout, slot, row, column - 1, ChestLayout.EDGE_LEFT, ChestLayout.EDGE_RIGHT, tail);
+            tail = visit(layout, slot, row, column + 1, ChestLayout.EDGE_RIGHT, ChestLayout.EDGE_LEFT, tail);
+        }
+        // Frontera: cada lado cuyo vecino no es de la sección
+        for (int i = 0; i < tail; i++) {
+            int row = queue[i] / columns, column = queue[i] % columns;
+            int mask = 0;
+            if (!inSection(row - 1, column)) mask |= ChestConfigManager.ACTION_TOP;
+            if (!inSection(row + 1, column)) mask |= ChestConfigManager.ACTION_BOTTOM;
+            if (!inSection(row, column - 1)) mask |= ChestConfigManager.ACTION_LEFT;
+            if (!inSection(row, column + 1)) mask |= ChestConfigManager.ACTION_RIGHT;
+            if (mask != 0) add(grid.slotAt(row, column), mask);
+        }
+        return count;
+    }
+
+    // Queues the neighbour cell when it exists, is new and the border between both slots is unpainted.
+    private int visit(ChestLayout layout, int slot, int row, int column, int edge, int opposite, int tail) {
+        if (row < 0 || column < 0 || row >= grid.getRows() || column >= grid.getColumns()) return tail;
+        int cell = row * grid.getColumns() + column;
+        if (visited[cell] == generation) return tail;
+        int neighbour = grid.slotAt(row, column);
+        if (neighbour < 0) return tail;
+        // En rejillas que no siguen el orden de la pantalla los dos lados no comparten borde: cuentan ambos
+        if (layout.getRef(slot, edge) != ColorTable.NONE || layout.getRef(slotIndices[neighbour], opposite) != ColorTable.NONE) return tail;
+        visited[cell] = generation;
+        queue[tail++] = cell;
+        return tail;
+    }
+
+    private boolean inSection(int row, int column) {
+        if (row < 0 || column < 0 || row >= grid.getRows() || column >= grid.getColumns()) return false;
+        return visited[row * grid.getColumns() + column] == generation;
+    }
+
+    private void add(int position, int mask) {
+        positions[count] = position;
+        slots[count] = slotIndices[position];
+        masks[count] = mask;
+        count++;
+    }
+}
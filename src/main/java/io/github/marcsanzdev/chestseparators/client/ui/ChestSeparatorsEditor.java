@@ -2,6 +2,8 @@ package io.github.marcsanzdev.chestseparators.client.ui;
 
 import io.github.marcsanzdev.chestseparators.config.GlobalChestConfig;
 import io.github.marcsanzdev.chestseparators.data.ChestConfigManager;
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.ColorTable;
 import io.github.marcsanzdev.chestseparators.mixin.client.HandledScreenAccessor;
 import io.github.marcsanzdev.chestseparators.util.ChestPosStorage;
 import net.fabricmc.api.EnvType;
@@ -14,7 +16,6 @@ import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.screen.ingame.HandledScreen;
 import net.minecraft.client.gui.tooltip.Tooltip;
 import net.minecraft.client.gui.widget.ButtonWidget;
-import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.screen.slot.Slot;
 import net.minecraft.sound.SoundEvents;
 import net.minecraft.text.Text;
@@ -24,7 +25,6 @@ import net.minecraft.util.math.MathHelper;
 import org.lwjgl.glfw.GLFW;
 
 import java.awt.Color;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -33,6 +33,7 @@ public class ChestSeparatorsEditor {
 
     private final HandledScreen<?> screen;
     private final HandledScreenAccessor accessor;
+    private final ContainerAdapter adapter;
 
     // --- ESTADO UI ---
     private boolean isEditMode = false;
@@ -49,20 +50,22 @@ public class ChestSeparatorsEditor {
     private float pickerSat = 1.0f;
     private float pickerVal = 1.0f;
     private int pickerCurrentRGB = 0xFFFF0000;
+    // Etiquetas R/G/B del color mostrado; se rehacen sólo cuando cambia
+    private final Text[] pickerChannelLabels = new Text[3];
+    private int pickerLabelledRGB = 0;
 
     // --- LAYOUT ---
-    private static final int SIDEBAR_WIDTH = 100;
-    private static final int SWATCH_SIZE = 12;
-    private static final int TOOL_BTN_SIZE = 20;
+    static final int SIDEBAR_WIDTH = 100;
+    static final int SWATCH_SIZE = 12;
+    static final int TOOL_BTN_SIZE = 20;
     private static final int SIDEBAR_Y_OFFSET = -18;
+    // Dos filas de herramientas encima de la paleta
+    static final int TOOL_ROW_SPACING = 22;
+    static final int PALETTE_BOX_OFFSET = 25 + TOOL_ROW_SPACING;
 
     // --- PALETA ESTÁNDAR ---
-    private static final int[] STANDARD_PALETTE = {
-            0xFF993333, 0xFFD87F33, 0xFFE5E533, 0xFF7FCC19,
-            0xFF667F33, 0xFF4C7F99, 0xFF6699D8, 0xFF334CB2,
-            0xFF7F3FB2, 0xFFB24CD8, 0xFFF27FA5, 0xFF664C33,
-            0xFFFFFFFF, 0xFF999999, 0xFF4C4C4C, 0xFF191919
-    };
+    // Los colores viven en ColorTable: los layouts guardan su índice, no el ARGB
+    private static final int[] STANDARD_PALETTE = ColorTable.STANDARD_COLORS;
 
     private static final String[] STANDARD_COLOR_KEYS = {
             "red", "orange", "yellow", "lime",
@@ -72,15 +75,57 @@ public class ChestSeparatorsEditor {
     };
 
     private int selectedColorIndex = 0;
-    private static final int TOOL_ERASER_ID = -1;
+    static final int TOOL_ERASER_ID = -1;
+    // Herramientas de área: se combinan con el color (o la goma) seleccionado
+    static final int TOOL_OUTLINE_ID = 104;
+    static final int TOOL_GRID_ID = 105;
+    static final int TOOL_SECTION_ID = 106;
+
+    // --- TEXTOS ---
+    // Creados una vez: el frame no construye ningún Text (la traducción se resuelve al dibujar)
+    private static final Text EDIT_LABEL = Text.literal("✎");
+    private static final Text CLOSE_LABEL = Text.literal("✖");
+    private static final Text ERASER_TOOLTIP = Text.translatable("tooltip.chestseparators.eraser");
+    private static final Text CLEAR_ALL_TOOLTIP = Text.translatable("tooltip.chestseparators.clear_all");
+    private static final Text COPY_TOOLTIP = Text.translatable("tooltip.chestseparators.copy");
+    private static final Text PASTE_TOOLTIP = Text.translatable("tooltip.chestseparators.paste");
+    private static final Text OUTLINE_TOOLTIP = Text.translatable("tooltip.chestseparators.outline");
+    private static final Text GRID_TOOLTIP = Text.translatable("tooltip.chestseparators.grid");
+    private static final Text SECTION_TOOLTIP = Text.translatable("tooltip.chestseparators.section");
+    private static final Text OPEN_PICKER_TOOLTIP = Text.translatable("tooltip.chestseparators.open_picker");
+    private static final Text PICKER_TITLE = Text.translatable("window.chestseparators.edit_color").formatted(Formatting.BOLD);
+    private static final Text SAVE_LABEL = Text.translatable("button.chestseparators.save");
+    private static final Text CANCEL_LABEL = Text.translatable("button.chestseparators.cancel");
+    private static final Text UNDONE_MESSAGE = Text.translatable("message.chestseparators.undone");
+    private static final Text REDONE_MESSAGE = Text.translatable("message.chestseparators.redone");
+    private static final Text[] STANDARD_COLOR_NAMES = new Text[16];
+    private static final Text[] CUSTOM_COLOR_NAMES = new Text[8];
+
+    static {
+        for (int i = 0; i < STANDARD_COLOR_NAMES.length; i++) {
+            STANDARD_COLOR_NAMES[i] = Text.translatable("color.minecraft." + STANDARD_COLOR_KEYS[i]);
+        }
+        for (int i = 0; i < CUSTOM_COLOR_NAMES.length; i++) {
+            CUSTOM_COLOR_NAMES[i] = Text.translatable("color.chestseparators.custom", (i + 1));
+        }
+    }
 
     // --- ARRASTRAR ---
     private boolean isDraggingLine = false;
     private int currentDragAction = 0;
-    private Slot dragStartSlot = null;
-    private Slot dragCurrentSlot = null;
+    // Posiciones (en los arrays de slots del contenedor) del slot inicial y del actual, o -1
+    private int dragStart = -1;
+    private int dragCurrent = -1;
     private boolean isDragModeErasing = false;
 
+    // --- HERRAMIENTAS DE ÁREA ---
+    // 0 = línea normal; si no, TOOL_OUTLINE_ID, TOOL_GRID_ID o TOOL_SECTION_ID
+    private int areaTool = 0;
+    private boolean isDraggingArea = false;
+    // Posiciones (en los arrays de slots del contenedor) de las esquinas del rectángulo
+    private int areaStart = -1;
+    private int areaCurrent = -1;
+
     // --- CONTEXT ---
     private BlockPos currentChestPos;
     private String currentDimension;
@@ -90,9 +135,34 @@ public class ChestSeparatorsEditor {
     private Text statusMessage = null;
     private long statusMessageTime = 0;
 
-    public ChestSeparatorsEditor(HandledScreen<?> screen) {
+    // --- GEOMETRÍA CACHEADA ---
+    // Hit-test, líneas guardadas y previsualizaciones: la parte del frame que no toca Minecraft
+    private final EditorOverlay overlay = new EditorOverlay();
+    private final ContextRectSink contextSink = new ContextRectSink();
+    // Zona visible del contenedor en pantalla (x1, y1, x2, y2), la rellena el adaptador cada frame
+    private final int[] visibleArea = new int[4];
+    private int[] containerSlotIndices = new int[0];
+    private int[] containerSlotX = new int[0];
+    private int[] containerSlotY = new int[0];
+    private int containerSlotCount = 0;
+
+    // Control de la barra lateral bajo el ratón (SidebarHitMap.MISS si ninguno). Sigue al GUI si se ha movido.
+    private int sidebarControlAt(double mx, double my) {
+        return overlay.sidebarControlAt(accessor.getX() + accessor.getBackgroundWidth() + 4, accessor.getY() + SIDEBAR_Y_OFFSET, mx, my);
+    }
+
+    // Posición en los arrays de slots del contenedor del slot bajo el ratón (-1 sobre el inventario del
+    // jugador o entre slots).
+    private int containerSlotPositionAt(double mx, double my) {
+        int x = (int) Math.floor(mx) - accessor.getX();
+        int y = (int) Math.floor(my) - accessor.getY();
+        return overlay.slotAt(x, y);
+    }
+
+    public ChestSeparatorsEditor(HandledScreen<?> screen, ContainerAdapter adapter) {
         this.screen = screen;
         this.accessor = (HandledScreenAccessor) screen;
+        this.adapter = adapter;
     }
 
     public void init() {
@@ -102,7 +172,8 @@ public class ChestSeparatorsEditor {
         this.currentEntityUUID = ChestPosStorage.lastClickedEntityUUID;
         this.isEnderChest = false;
 
-        ChestConfigManager.getInstance().loadWorldPalette();
+        collectContainerSlots();
+        ChestConfigManager.getInstance().prepareForSlots(countContainerSlots(), overlay.getGrid().rowMajorColumns(containerSlotIndices));
 
         if (this.isEntityChest && this.currentEntityUUID != null) {
             ChestConfigManager.getInstance().loadEntityConfig(this.currentEntityUUID);
@@ -121,7 +192,7 @@ public class ChestSeparatorsEditor {
 
         Text keyName = io.github.marcsanzdev.chestseparators.event.KeyInputHandler.toggleButtonKey.getBoundKeyLocalizedText().copy().formatted(Formatting.YELLOW);
 
-        this.entryButton = ButtonWidget.builder(Text.literal("✎"), button -> toggleEditMode())
+        this.entryButton = ButtonWidget.builder(EDIT_LABEL, button -> toggleEditMode())
                 .dimensions(x + bgWidth - 22, y - 22, 20, 20)
                 .tooltip(Tooltip.of(Text.translatable("tooltip.chestseparators.edit_mode_hint", keyName)))
                 .build();
@@ -134,11 +205,37 @@ public class ChestSeparatorsEditor {
         setupInputHandlers();
     }
 
+    // Las posiciones de los slots del contenedor no cambian mientras la pantalla está abierta.
+    private void collectContainerSlots() {
+        List<Slot> slots = accessor.getHandler().slots;
+        containerSlotIndices = new int[slots.size()];
+        containerSlotX = new int[slots.size()];
+        containerSlotY = new int[slots.size()];
+        containerSlotCount = 0;
+        for (Slot s : slots) {
+            if (!adapter.isContainerSlot(s)) continue;
+            containerSlotIndices[containerSlotCount] = s.getIndex();
+            containerSlotX[containerSlotCount] = s.x;
+            containerSlotY[containerSlotCount] = s.y;
+            containerSlotCount++;
+        }
+        overlay.setSlots(containerSlotIndices, containerSlotX, containerSlotY, containerSlotCount);
+    }
+
+    private int countContainerSlots() {
+        int count = 0;
+        for (int i = 0; i < containerSlotCount; i++) {
+            count = Math.max(count, containerSlotIndices[i] + 1);
+        }
+        return count;
+    }
+
     public boolean isEditMode() {
         return isEditMode;
     }
 
     public void onClose() {
+        ChestConfigManager.getInstance().flushPendingWritesAsync();
         ChestConfigManager.getInstance().clearCurrentConfig();
         isColorPickerOpen = false;
     }
@@ -180,21 +277,26 @@ public class ChestSeparatorsEditor {
 
             if (handleSidebarClick(mouseX, mouseY, button)) return false;
 
+            if (button == 0 && areaTool != 0) {
+                handleAreaPress(mouseX, mouseY);
+                return false;
+            }
+
             if (button == 0) {
-                Slot slot = accessor.getFocusedSlot();
-                if (slot != null && !(slot.inventory instanceof PlayerInventory)) {
-                    int action = calculateAction(slot, mouseX, mouseY);
+                int position = containerSlotPositionAt(mouseX, mouseY);
+                if (position >= 0) {
+                    int action = calculateAction(position, mouseX, mouseY);
                     if (action != 0) {
                         this.isDraggingLine = true;
                         this.currentDragAction = action;
-                        this.dragStartSlot = slot;
-                        this.dragCurrentSlot = slot;
+                        this.dragStart = position;
+                        this.dragCurrent = position;
 
                         if (selectedColorIndex == TOOL_ERASER_ID) {
                             this.isDragModeErasing = true;
                         } else {
                             ChestConfigManager manager = ChestConfigManager.getInstance();
-                            int existingColor = manager.getLineColor(slot.getIndex(), action);
+                            int existingColor = manager.getLineColor(containerSlotIndices[position], action);
                             int selectedColorVal = getCurrentSelectedColorValue();
 
                             if (selectedColorVal == 0) return false;
@@ -216,12 +318,18 @@ public class ChestSeparatorsEditor {
         ScreenMouseEvents.allowMouseRelease(screen).register((_screen, context) -> {
             int button = context.button();
 
+            if (button == 0 && this.isDraggingArea) {
+                commitArea();
+                this.isDraggingArea = false;
+                this.areaStart = -1;
+                this.areaCurrent = -1;
+            }
             if (button == 0 && this.isDraggingLine) {
                 commitDrag();
                 this.isDraggingLine = false;
                 this.currentDragAction = 0;
-                this.dragStartSlot = null;
-                this.dragCurrentSlot = null;
+                this.dragStart = -1;
+                this.dragCurrent = -1;
                 this.isDragModeErasing = false;
             }
             return true;
@@ -236,10 +344,17 @@ public class ChestSeparatorsEditor {
                 handleColorPickerDrag(mouseX, mouseY);
                 return false;
             }
+            if (isDraggingArea) {
+                int position = containerSlotPositionAt(mouseX, mouseY);
+                if (position >= 0) {
+                    this.areaCurrent = position;
+                }
+                return false;
+            }
             if (isDraggingLine) {
-                Slot slot = accessor.getFocusedSlot();
-                if (slot != null && !(slot.inventory instanceof PlayerInventory)) {
-                    this.dragCurrentSlot = slot;
+                int position = containerSlotPositionAt(mouseX, mouseY);
+                if (position >= 0) {
+                    this.dragCurrent = position;
                 }
                 return false;
             }
@@ -252,7 +367,8 @@ public class ChestSeparatorsEditor {
         if (this.entryButton != null) {
             // Ocultamos el botón nativo si el picker está abierto
             this.entryButton.visible = !isColorPickerOpen && showButton;
-            this.entryButton.setMessage(Text.literal(this.isEditMode ? "✖" : "✎"));
+            Text label = this.isEditMode ? CLOSE_LABEL : EDIT_LABEL;
+            if (this.entryButton.getMessage() != label) this.entryButton.setMessage(label);
             if (screen.getFocused() == this.entryButton) screen.setFocused(null);
         }
 
@@ -278,9 +394,13 @@ public class ChestSeparatorsEditor {
             context.getMatrices().popMatrix();
 
             drawSidebar(context, mouseX, mouseY);
-            renderDragPreview(context);
-            if (!isDraggingLine && !isColorPickerOpen) {
-                renderHoverPreview(context, mouseX, mouseY);
+            if (areaTool != 0) {
+                if (!isColorPickerOpen) renderAreaPreview(context, mouseX, mouseY);
+            } else {
+                renderDragPreview(context);
+                if (!isDraggingLine && !isColorPickerOpen) {
+                    renderHoverPreview(context, mouseX, mouseY);
+                }
             }
             renderStatusMessage(context);
 
@@ -292,8 +412,7 @@ public class ChestSeparatorsEditor {
                 redrawCustomColumnHighlight(context, mouseX, mouseY);
 
                 // 3. Redibujamos el botón de la paleta (brillante)
-                int[] pos = getPaletteBtnPos();
-                drawPaletteButton(context, pos[0], pos[1], mouseX, mouseY);
+                drawPaletteButton(context, getPaletteBtnX(), getPaletteBtnY(), mouseX, mouseY);
 
                 // 4. Dibujamos la ventana
                 drawColorPickerWindow(context, mouseX, mouseY);
@@ -302,38 +421,45 @@ public class ChestSeparatorsEditor {
     }
 
     public void renderSavedLinesLayer(DrawContext context) {
-        ChestConfigManager manager = ChestConfigManager.getInstance();
+        ChestLayout layout = ChestConfigManager.getInstance().getCurrentLayout();
+        if (layout.isEmpty()) return;
 
-        for (Slot s : accessor.getHandler().slots) {
-            if (s.inventory instanceof PlayerInventory) continue;
-            renderLineRaw(context, s.x, s.y, manager.getLineColor(s.getIndex(), ChestConfigManager.ACTION_TOP), ChestConfigManager.ACTION_TOP);
-            renderLineRaw(context, s.x, s.y, manager.getLineColor(s.getIndex(), ChestConfigManager.ACTION_BOTTOM), ChestConfigManager.ACTION_BOTTOM);
-            renderLineRaw(context, s.x, s.y, manager.getLineColor(s.getIndex(), ChestConfigManager.ACTION_LEFT), ChestConfigManager.ACTION_LEFT);
-            renderLineRaw(context, s.x, s.y, manager.getLineColor(s.getIndex(), ChestConfigManager.ACTION_RIGHT), ChestConfigManager.ACTION_RIGHT);
-        }
-    }
-
-    private int[] getPaletteBtnPos() {
+        // Solo los quads dentro de la zona visible; la geometría está en coordenadas del GUI
+        adapter.getVisibleArea(screen, visibleArea);
         int guiX = accessor.getX();
         int guiY = accessor.getY();
-        int sx = guiX + accessor.getBackgroundWidth() + 4;
+        contextSink.context = context;
+        overlay.renderSavedLines(contextSink, layout, ChestConfigManager.getInstance().getColorTable(),
+                visibleArea[0] - guiX, visibleArea[1] - guiY, visibleArea[2] - guiX, visibleArea[3] - guiY);
+        contextSink.context = null;
+    }
 
-        int contentX = sx + 7;
-        int paletteBoxY = guiY + SIDEBAR_Y_OFFSET + 25;
+    // Adaptador reutilizable: evita crear una lambda por frame al reproducir la geometría
+    private static final class ContextRectSink implements RectSink {
+        private DrawContext context;
 
+        @Override
+        public void fill(int x1, int y1, int x2, int y2, int color) {
+            context.fill(x1, y1, x2, y2, color);
+        }
+    }
+
+    // Posición del botón de la paleta, en dos getters para no crear un array por frame
+    private int getPaletteBtnX() {
+        int contentX = accessor.getX() + accessor.getBackgroundWidth() + 4 + 7;
         int pX = contentX + 8;
-        int pY = paletteBoxY + 4;
         int col3X = pX + (SWATCH_SIZE + 4) * 2 + 4;
+        return col3X + SWATCH_SIZE + 6;
+    }
 
-        int pickerBtnX = col3X + SWATCH_SIZE + 6;
-        int pickerBtnY = pY + (3 * (SWATCH_SIZE + 4));
-
-        return new int[]{pickerBtnX, pickerBtnY};
+    private int getPaletteBtnY() {
+        int paletteBoxY = accessor.getY() + SIDEBAR_Y_OFFSET + PALETTE_BOX_OFFSET;
+        int pY = paletteBoxY + 4;
+        return pY + (3 * (SWATCH_SIZE + 4));
     }
 
     private boolean isClickingPaletteButton(double mx, double my) {
-        int[] pos = getPaletteBtnPos();
-        return isHovering(pos[0], pos[1], 20, 20, mx, my);
+        return sidebarControlAt(mx, my) == 103;
     }
 
     private void drawModernToggleButton(DrawContext context, int mouseX, int mouseY) {
@@ -369,7 +495,7 @@ public class ChestSeparatorsEditor {
         int sy = accessor.getY();
         int contentX = sx + 7;
 
-        int paletteBoxY = sy + SIDEBAR_Y_OFFSET + 25;
+        int paletteBoxY = sy + SIDEBAR_Y_OFFSET + PALETTE_BOX_OFFSET;
         int pX = contentX + 8;
         int pY = paletteBoxY + 4;
         int col3X = pX + (SWATCH_SIZE + 4) * 2 + 4;
@@ -378,9 +504,10 @@ public class ChestSeparatorsEditor {
         for (int i = 0; i < 8; i++) {
             int y = pY + (i * (SWATCH_SIZE + 4));
             drawSwatch(context, col3X, y, worldColors[i], 16 + i, mouseX, mouseY, true);
-            if (isHovering(col3X, y, SWATCH_SIZE, SWATCH_SIZE, mouseX, mouseY)) {
-                context.drawTooltip(MinecraftClient.getInstance().textRenderer, Text.translatable("color.chestseparators.custom", (i + 1)), mouseX, mouseY);
-            }
+        }
+        int hovered = sidebarControlAt(mouseX, mouseY);
+        if (hovered >= 16 && hovered < 24) {
+            context.drawTooltip(MinecraftClient.getInstance().textRenderer, CUSTOM_COLOR_NAMES[hovered - 16], mouseX, mouseY);
         }
     }
 
@@ -392,12 +519,15 @@ public class ChestSeparatorsEditor {
         int contentX = sx + 7;
         int currentY = sy + SIDEBAR_Y_OFFSET;
 
-        drawToolButton(context, contentX, currentY, TOOL_ERASER_ID, Text.translatable("tooltip.chestseparators.eraser").getString(), mouseX, mouseY);
-        drawToolButton(context, contentX + 22, currentY, 100, Text.translatable("tooltip.chestseparators.clear_all").getString(), mouseX, mouseY);
-        drawToolButton(context, contentX + 44, currentY, 101, Text.translatable("tooltip.chestseparators.copy").getString(), mouseX, mouseY);
-        drawToolButton(context, contentX + 66, currentY, 102, Text.translatable("tooltip.chestseparators.paste").getString(), mouseX, mouseY);
+        drawToolButton(context, contentX, currentY, TOOL_ERASER_ID, ERASER_TOOLTIP, mouseX, mouseY);
+        drawToolButton(context, contentX + 22, currentY, 100, CLEAR_ALL_TOOLTIP, mouseX, mouseY);
+        drawToolButton(context, contentX + 44, currentY, 101, COPY_TOOLTIP, mouseX, mouseY);
+        drawToolButton(context, contentX + 66, currentY, 102, PASTE_TOOLTIP, mouseX, mouseY);
+        drawToolButton(context, contentX, currentY + TOOL_ROW_SPACING, TOOL_OUTLINE_ID, OUTLINE_TOOLTIP, mouseX, mouseY);
+        drawToolButton(context, contentX + 22, currentY + TOOL_ROW_SPACING, TOOL_GRID_ID, GRID_TOOLTIP, mouseX, mouseY);
+        drawToolButton(context, contentX + 44, currentY + TOOL_ROW_SPACING, TOOL_SECTION_ID, SECTION_TOOLTIP, mouseX, mouseY);
 
-        currentY += 26;
+        currentY += PALETTE_BOX_OFFSET + 1;
 
         int paletteBoxW = 86;
         int paletteBoxH = 135;
@@ -420,10 +550,6 @@ public class ChestSeparatorsEditor {
             int y = pY + (row * (SWATCH_SIZE + 4));
 
             drawSwatch(context, x, y, STANDARD_PALETTE[i], i, mouseX, mouseY, false);
-
-            if (!isColorPickerOpen && isHovering(x, y, SWATCH_SIZE, SWATCH_SIZE, mouseX, mouseY)) {
-                context.drawTooltip(MinecraftClient.getInstance().textRenderer, Text.translatable("color.minecraft." + STANDARD_COLOR_KEYS[i]), mouseX, mouseY);
-            }
         }
 
         int[] worldColors = ChestConfigManager.getInstance().getCustomColors();
@@ -432,13 +558,16 @@ public class ChestSeparatorsEditor {
             int x = col3X;
             int y = pY + (row * (SWATCH_SIZE + 4));
             drawSwatch(context, x, y, worldColors[i], 16 + i, mouseX, mouseY, true);
-            if (!isColorPickerOpen && isHovering(x, y, SWATCH_SIZE, SWATCH_SIZE, mouseX, mouseY)) {
-                context.drawTooltip(MinecraftClient.getInstance().textRenderer, Text.translatable("color.chestseparators.custom", (i + 1)), mouseX, mouseY);
-            }
         }
 
-        int[] btnPos = getPaletteBtnPos();
-        drawPaletteButton(context, btnPos[0], btnPos[1], mouseX, mouseY);
+        int hovered = sidebarControlAt(mouseX, mouseY);
+        if (!isColorPickerOpen && hovered >= 0 && hovered < 16) {
+            context.drawTooltip(MinecraftClient.getInstance().textRenderer, STANDARD_COLOR_NAMES[hovered], mouseX, mouseY);
+        } else if (!isColorPickerOpen && hovered >= 16 && hovered < 24) {
+            context.drawTooltip(MinecraftClient.getInstance().textRenderer, CUSTOM_COLOR_NAMES[hovered - 16], mouseX, mouseY);
+        }
+
+        drawPaletteButton(context, getPaletteBtnX(), getPaletteBtnY(), mouseX, mouseY);
     }
 
     private void drawColorPickerWindow(DrawContext context, int mouseX, int mouseY) {
@@ -450,12 +579,12 @@ public class ChestSeparatorsEditor {
 
         drawDarkBevel(context, x, y, w, h, false);
 
-        context.drawText(MinecraftClient.getInstance().textRenderer, Text.translatable("window.chestseparators.edit_color").formatted(Formatting.BOLD), x + 12, y + 12, 0xFFE0E0E0, false);
+        context.drawText(MinecraftClient.getInstance().textRenderer, PICKER_TITLE, x + 12, y + 12, 0xFFE0E0E0, false);
 
         int contentY = y + 35;
         int contentX = x + 12;
 
-        drawSaturationValueBox(context, contentX, contentY, 100, 100);
+        HsvPickerTexture.drawSaturationValueBox(context, contentX, contentY, pickerHue);
         drawDarkBevel(context, contentX - 1, contentY - 1, 102, 102, true);
 
         int cursorX = contentX + (int)(pickerSat * 100);
@@ -464,7 +593,7 @@ public class ChestSeparatorsEditor {
         context.drawStrokedRectangle(cursorX - 1, cursorY - 1, 3, 3, 0xFFFFFFFF);
 
         int hueX = contentX + 115;
-        drawHueBar(context, hueX, contentY, 20, 100);
+        HsvPickerTexture.drawHueBar(context, hueX, contentY);
         drawDarkBevel(context, hueX - 1, contentY - 1, 22, 102, true);
 
         int hueCursorY = contentY + (int)(pickerHue * 100);
@@ -475,19 +604,22 @@ public class ChestSeparatorsEditor {
         context.fill(infoX, contentY, infoX + 45, contentY + 45, 0xFF000000 | pickerCurrentRGB);
         drawDarkBevel(context, infoX, contentY, 45, 45, true);
 
-        int r = (pickerCurrentRGB >> 16) & 0xFF;
-        int g = (pickerCurrentRGB >> 8) & 0xFF;
-        int b = pickerCurrentRGB & 0xFF;
+        if (pickerChannelLabels[0] == null || pickerLabelledRGB != pickerCurrentRGB) {
+            pickerLabelledRGB = pickerCurrentRGB;
+            pickerChannelLabels[0] = Text.literal("R: " + ((pickerCurrentRGB >> 16) & 0xFF)).formatted(Formatting.RED);
+            pickerChannelLabels[1] = Text.literal("G: " + ((pickerCurrentRGB >> 8) & 0xFF)).formatted(Formatting.GREEN);
+            pickerChannelLabels[2] = Text.literal("B: " + (pickerCurrentRGB & 0xFF)).formatted(Formatting.BLUE);
+        }
 
         int textY = contentY + 55;
-        context.drawText(MinecraftClient.getInstance().textRenderer, Text.literal("R: " + r).formatted(Formatting.RED), infoX, textY, 0xFFFFFFFF, false);
-        context.drawText(MinecraftClient.getInstance().textRenderer, Text.literal("G: " + g).formatted(Formatting.GREEN), infoX, textY + 12, 0xFFFFFFFF, false);
-        context.drawText(MinecraftClient.getInstance().textRenderer, Text.literal("B: " + b).formatted(Formatting.BLUE), infoX, textY + 24, 0xFFFFFFFF, false);
+        context.drawText(MinecraftClient.getInstance().textRenderer, pickerChannelLabels[0], infoX, textY, 0xFFFFFFFF, false);
+        context.drawText(MinecraftClient.getInstance().textRenderer, pickerChannelLabels[1], infoX, textY + 12, 0xFFFFFFFF, false);
+        context.drawText(MinecraftClient.getInstance().textRenderer, pickerChannelLabels[2], infoX, textY + 24, 0xFFFFFFFF, false);
 
         int btnY = y + h - 30;
         int btnW = 60;
-        drawModernButton(context, x + w - 135, btnY, btnW, 18, Text.translatable("button.chestseparators.save").getString(), 0xFF2D852D, mouseX, mouseY);
-        drawModernButton(context, x + w - 70, btnY, btnW, 18, Text.translatable("button.chestseparators.cancel").getString(), 0xFF852D2D, mouseX, mouseY);
+        drawModernButton(context, x + w - 135, btnY, btnW, 18, SAVE_LABEL, 0xFF2D852D, mouseX, mouseY);
+        drawModernButton(context, x + w - 70, btnY, btnW, 18, CANCEL_LABEL, 0xFF852D2D, mouseX, mouseY);
     }
 
     private void drawDarkBevel(DrawContext context, int x, int y, int width, int height, boolean sunken) {
@@ -507,7 +639,7 @@ public class ChestSeparatorsEditor {
         }
     }
 
-    private void drawModernButton(DrawContext context, int x, int y, int w, int h, String label, int baseColor, int mx, int my) {
+    private void drawModernButton(DrawContext context, int x, int y, int w, int h, Text label, int baseColor, int mx, int my) {
         boolean hover = isHovering(x, y, w, h, mx, my);
         int color = hover ? shiftColor(baseColor, 30) : baseColor;
 
@@ -519,27 +651,7 @@ public class ChestSeparatorsEditor {
         }
 
         int textWidth = MinecraftClient.getInstance().textRenderer.getWidth(label);
-        context.drawText(MinecraftClient.getInstance().textRenderer, Text.literal(label), x + (w - textWidth)/2, y + (h - 8)/2, 0xFFFFFFFF, false);
-    }
-
-    private void drawSaturationValueBox(DrawContext context, int x, int y, int w, int h) {
-        int step = 2;
-        for (int i = 0; i < w; i += step) {
-            for (int j = 0; j < h; j += step) {
-                float sat = (float)i / w;
-                float val = 1.0f - ((float)j / h);
-                int color = Color.HSBtoRGB(pickerHue, sat, val);
-                context.fill(x + i, y + j, x + i + step, y + j + step, color);
-            }
-        }
-    }
-
-    private void drawHueBar(DrawContext context, int x, int y, int w, int h) {
-        for (int i = 0; i < h; i++) {
-            float hue = (float)i / h;
-            int color = Color.HSBtoRGB(hue, 1.0f, 1.0f);
-            context.fill(x, y + i, x + w, y + i + 1, color);
-        }
+        context.drawText(MinecraftClient.getInstance().textRenderer, label, x + (w - textWidth)/2, y + (h - 8)/2, 0xFFFFFFFF, false);
     }
 
     private void drawPaletteButton(DrawContext context, int x, int y, int mouseX, int mouseY) {
@@ -566,19 +678,10 @@ public class ChestSeparatorsEditor {
 
         if (hover) {
             context.drawStrokedRectangle(x, y, 20, 20, 0x40FFFFFF);
-            context.drawTooltip(MinecraftClient.getInstance().textRenderer, Text.translatable("tooltip.chestseparators.open_picker"), mouseX, mouseY);
+            context.drawTooltip(MinecraftClient.getInstance().textRenderer, OPEN_PICKER_TOOLTIP, mouseX, mouseY);
         }
     }
 
-    private void drawGenericButton(DrawContext context, int x, int y, int w, int h, String label, int mx, int my) {
-        boolean hover = isHovering(x, y, w, h, mx, my);
-        context.fill(x, y, x + w, y + h, 0xFFC6C6C6);
-        drawStandardBevel(context, x, y, w, h, false);
-        int textWidth = MinecraftClient.getInstance().textRenderer.getWidth(label);
-        context.drawText(MinecraftClient.getInstance().textRenderer, Text.literal(label), x + (w - textWidth)/2, y + (h - 8)/2, 0xFF000000, false);
-        if (hover) context.drawStrokedRectangle(x, y, w, h, 0xFFFFFFFF);
-    }
-
     private boolean isInsidePickerWindow(double mx, double my) {
         int w = 220; int h = 170;
         int x = (screen.width - w) / 2; int y = (screen.height - h) / 2;
@@ -590,7 +693,7 @@ public class ChestSeparatorsEditor {
         int sx = guiX + accessor.getBackgroundWidth() + 4;
         int sy = accessor.getY();
         int contentX = sx + 7;
-        int paletteBoxY = sy + SIDEBAR_Y_OFFSET + 25;
+        int paletteBoxY = sy + SIDEBAR_Y_OFFSET + PALETTE_BOX_OFFSET;
         int pX = contentX + 8;
         int pY = paletteBoxY + 4;
         int col3X = pX + (SWATCH_SIZE + 4) * 2 + 4;
@@ -680,7 +783,7 @@ public class ChestSeparatorsEditor {
         boolean disabled = isColorPickerOpen && !isCustom;
         boolean selected = (index == selectedColorIndex);
         boolean sunken = selected;
-        boolean hover = !disabled && isHovering(x, y, SWATCH_SIZE, SWATCH_SIZE, mouseX, mouseY);
+        boolean hover = !disabled && sidebarControlAt(mouseX, mouseY) == index;
 
         if (color == 0) {
             context.fill(x, y, x + SWATCH_SIZE, y + SWATCH_SIZE, 0xFF555555);
@@ -752,9 +855,10 @@ public class ChestSeparatorsEditor {
         }
     }
 
-    private void drawToolButton(DrawContext context, int x, int y, int id, String label, int mouseX, int mouseY) {
+    private void drawToolButton(DrawContext context, int x, int y, int id, Text label, int mouseX, int mouseY) {
         boolean activeState = false;
         if (id == TOOL_ERASER_ID) activeState = (selectedColorIndex == TOOL_ERASER_ID);
+        else if (id >= TOOL_OUTLINE_ID && id <= TOOL_SECTION_ID) activeState = (areaTool == id);
         else if (id == 102 && !ChestConfigManager.getInstance().hasClipboardData()) {
             context.fill(x, y, x + TOOL_BTN_SIZE, y + TOOL_BTN_SIZE, 0xFF454545);
             drawDarkBevel(context, x, y, TOOL_BTN_SIZE, TOOL_BTN_SIZE, false);
@@ -779,10 +883,13 @@ public class ChestSeparatorsEditor {
         else if (id == 100) drawTrashIcon(context, x, y);
         else if (id == 101) drawCopyIcon(context, x, y);
         else if (id == 102) drawPasteIcon(context, x, y, true);
+        else if (id == TOOL_OUTLINE_ID) drawOutlineIcon(context, x, y);
+        else if (id == TOOL_GRID_ID) drawGridIcon(context, x, y);
+        else if (id == TOOL_SECTION_ID) drawSectionIcon(context, x, y);
 
         if (hover) {
             context.drawStrokedRectangle(x, y, TOOL_BTN_SIZE, TOOL_BTN_SIZE, 0x40FFFFFF);
-            context.drawTooltip(MinecraftClient.getInstance().textRenderer, Text.literal(label), mouseX, mouseY);
+            context.drawTooltip(MinecraftClient.getInstance().textRenderer, label, mouseX, mouseY);
         }
 
         if (isColorPickerOpen) {
@@ -817,6 +924,22 @@ public class ChestSeparatorsEditor {
         context.fill(cx + 3, cy + 1, cx + 7, cy + 3, 0xFFCCCCCC);
     }
 
+    private void drawOutlineIcon(DrawContext context, int x, int y) {
+        context.drawStrokedRectangle(x + 5, y + 5, 10, 10, 0xFFFFFFFF);
+    }
+    private void drawGridIcon(DrawContext context, int x, int y) {
+        context.drawStrokedRectangle(x + 4, y + 4, 12, 12, 0xFFFFFFFF);
+        context.fill(x + 8, y + 5, x + 9, y + 15, 0xFFAAAAAA);
+        context.fill(x + 11, y + 5, x + 12, y + 15, 0xFFAAAAAA);
+        context.fill(x + 5, y + 8, x + 15, y + 9, 0xFFAAAAAA);
+        context.fill(x + 5, y + 11, x + 15, y + 12, 0xFFAAAAAA);
+    }
+    private void drawSectionIcon(DrawContext context, int x, int y) {
+        context.fill(x + 5, y + 5, x + 15, y + 15, 0xFF555555);
+        context.drawStrokedRectangle(x + 4, y + 4, 12, 12, 0xFFFFFFFF);
+        context.fill(x + 7, y + 7, x + 11, y + 11, 0xFFE8C060);
+    }
+
     private void triggerActionAnimation(int actionId) {
         this.clickedActionId = actionId;
         this.clickedActionTime = System.currentTimeMillis();
@@ -829,16 +952,15 @@ public class ChestSeparatorsEditor {
 
         if (mx < sx || mx > sx + SIDEBAR_WIDTH || my < sy + SIDEBAR_Y_OFFSET || my > sy + accessor.getBackgroundHeight()) return false;
 
-        int contentX = sx + 7;
-        int currentY = sy + SIDEBAR_Y_OFFSET;
-
-        if (isHovering(contentX, currentY, TOOL_BTN_SIZE, TOOL_BTN_SIZE, mx, my)) {
+        // Una sola consulta al mapa de controles en lugar de probar cada botón y muestra
+        int hit = sidebarControlAt(mx, my);
+        if (hit == TOOL_ERASER_ID) {
             this.selectedColorIndex = TOOL_ERASER_ID;
             this.editingCustomIndex = -1;
             playClickSound(1.0f);
             return true;
         }
-        if (isHovering(contentX + 22, currentY, TOOL_BTN_SIZE, TOOL_BTN_SIZE, mx, my)) {
+        if (hit == 100) {
             if (isEntityChest && currentEntityUUID != null) ChestConfigManager.getInstance().clearEntityChest(currentEntityUUID);
             else if (isEnderChest) ChestConfigManager.getInstance().clearEnderChest();
             else ChestConfigManager.getInstance().clearChest(currentChestPos, currentDimension);
@@ -847,14 +969,14 @@ public class ChestSeparatorsEditor {
             triggerActionAnimation(100);
             return true;
         }
-        if (isHovering(contentX + 44, currentY, TOOL_BTN_SIZE, TOOL_BTN_SIZE, mx, my)) {
+        if (hit == 101) {
             ChestConfigManager.getInstance().copyToClipboard();
             playClickSound(1.0f);
             showStatus(Text.translatable("message.chestseparators.copied"), Formatting.GRAY);
             triggerActionAnimation(101);
             return true;
         }
-        if (isHovering(contentX + 66, currentY, TOOL_BTN_SIZE, TOOL_BTN_SIZE, mx, my)) {
+        if (hit == 102) {
             if (ChestConfigManager.getInstance().hasClipboardData()) {
                 ChestConfigManager.getInstance().pasteFromClipboard();
                 saveSmart();
@@ -864,45 +986,25 @@ public class ChestSeparatorsEditor {
             }
             return true;
         }
-
-        currentY += 26;
-
-        int paletteBoxX = contentX;
-        int paletteBoxY = currentY - 1;
-        int pX = paletteBoxX + 8;
-        int pY = paletteBoxY + 4;
-
-        int col1X = pX;
-        int col2X = pX + SWATCH_SIZE + 4;
-        for (int i = 0; i < 16; i++) {
-            int col = i / 8; int row = i % 8;
-            int x = (col == 0) ? col1X : col2X;
-            int y = pY + (row * (SWATCH_SIZE + 4));
-            if (isHovering(x, y, SWATCH_SIZE, SWATCH_SIZE, mx, my)) {
-                this.selectedColorIndex = i;
-                this.editingCustomIndex = -1;
-                playClickSound(1.0f);
-                return true;
-            }
+        if (hit >= TOOL_OUTLINE_ID && hit <= TOOL_SECTION_ID) {
+            // Pulsar la herramienta activa vuelve al trazo de líneas
+            this.areaTool = (areaTool == hit) ? 0 : hit;
+            playClickSound(1.0f);
+            return true;
         }
-
-        int col3X = pX + (SWATCH_SIZE + 4) * 2 + 4;
-        int[] worldColors = ChestConfigManager.getInstance().getCustomColors();
-        for (int i = 0; i < 8; i++) {
-            int row = i;
-            int x = col3X;
-            int y = pY + (row * (SWATCH_SIZE + 4));
-            if (isHovering(x, y, SWATCH_SIZE, SWATCH_SIZE, mx, my)) {
-                this.selectedColorIndex = 16 + i;
-                this.editingCustomIndex = i;
-                playClickSound(1.0f);
-                return true;
-            }
+        if (hit >= 0 && hit < 16) {
+            this.selectedColorIndex = hit;
+            this.editingCustomIndex = -1;
+            playClickSound(1.0f);
+            return true;
         }
-
-        int pickerBtnX = col3X + SWATCH_SIZE + 6;
-        int pickerBtnY = pY + (3 * (SWATCH_SIZE + 4));
-        if (isHovering(pickerBtnX, pickerBtnY, 20, 20, mx, my)) {
+        if (hit >= 16 && hit < 24) {
+            this.selectedColorIndex = hit;
+            this.editingCustomIndex = hit - 16;
+            playClickSound(1.0f);
+            return true;
+        }
+        if (hit == 103) {
             if (editingCustomIndex == -1) {
                 editingCustomIndex = 0;
                 selectedColorIndex = 16;
@@ -916,27 +1018,18 @@ public class ChestSeparatorsEditor {
         return true;
     }
 
-    private void renderLineRaw(DrawContext context, int x, int y, int color, int action) {
-        if (color == 0) return;
-        int renderColor = color | 0xFF000000;
-
-        if (action == ChestConfigManager.ACTION_TOP) context.fill(x - 1, y - 1, x + 17, y, renderColor);
-        else if (action == ChestConfigManager.ACTION_BOTTOM) context.fill(x - 1, y + 16, x + 17, y + 17, renderColor);
-        else if (action == ChestConfigManager.ACTION_LEFT) context.fill(x - 1, y - 1, x, y + 17, renderColor);
-        else if (action == ChestConfigManager.ACTION_RIGHT) context.fill(x + 16, y - 1, x + 17, y + 17, renderColor);
-    }
-
     private void commitDrag() {
-        if (dragStartSlot == null || dragCurrentSlot == null) return;
-        List<Slot> affectedSlots = calculateAffectedSlots();
+        if (dragStart < 0 || dragCurrent < 0) return;
+        int affectedCount = overlay.collectDrag(dragStart, dragCurrent, currentDragAction);
         ChestConfigManager manager = ChestConfigManager.getInstance();
         boolean changeMade = false;
-        int colorToPaint = getCurrentSelectedColorValue();
-        if (colorToPaint == 0 && !isDragModeErasing) return;
+        int colorToPaint = getCurrentSelectedColorRef();
+        if (colorToPaint == ColorTable.NONE && !isDragModeErasing) return;
 
-        for (Slot slot : affectedSlots) {
-            if (isDragModeErasing) manager.removeLine(slot.getIndex(), currentDragAction);
-            else manager.paintLine(slot.getIndex(), currentDragAction, colorToPaint);
+        for (int i = 0; i < affectedCount; i++) {
+            int slotIndex = overlay.dragSlotIndex(i);
+            if (isDragModeErasing) manager.removeLine(slotIndex, currentDragAction);
+            else manager.paintLine(slotIndex, currentDragAction, colorToPaint);
             changeMade = true;
         }
         if (changeMade) {
@@ -945,47 +1038,76 @@ public class ChestSeparatorsEditor {
         }
     }
 
-    private void renderHoverPreview(DrawContext context, int mouseX, int mouseY) {
-        Slot slot = accessor.getFocusedSlot();
-        if (slot != null && !(slot.inventory instanceof PlayerInventory)) {
-            int action = calculateAction(slot, mouseX, mouseY);
-            if (action != 0) {
-                int colorVal = getCurrentSelectedColorValue();
-                if (colorVal == 0 && selectedColorIndex != TOOL_ERASER_ID) return;
-
-                int color = (selectedColorIndex == TOOL_ERASER_ID) ? 0x88FFFFFF : (colorVal & 0x00FFFFFF) | 0x88000000;
-                int guiX = accessor.getX();
-                int guiY = accessor.getY();
-                int x = guiX + slot.x;
-                int y = guiY + slot.y;
-
-                if ((action & ChestConfigManager.ACTION_TOP) != 0) context.fill(x - 1, y - 1, x + 17, y, color);
-                else if ((action & ChestConfigManager.ACTION_BOTTOM) != 0) context.fill(x - 1, y + 16, x + 17, y + 17, color);
-                else if ((action & ChestConfigManager.ACTION_LEFT) != 0) context.fill(x - 1, y - 1, x, y + 17, color);
-                else if ((action & ChestConfigManager.ACTION_RIGHT) != 0) context.fill(x + 16, y - 1, x + 17, y + 17, color);
-            }
+    // --- HERRAMIENTAS DE ÁREA ---
+
+    // Contorno y rejilla empiezan un rectángulo que se aplica al soltar; la sección se aplica con el clic.
+    private void handleAreaPress(double mx, double my) {
+        int position = containerSlotPositionAt(mx, my);
+        if (position < 0) return;
+        if (selectedColorIndex != TOOL_ERASER_ID && getCurrentSelectedColorRef() == ColorTable.NONE) return;
+        if (areaTool == TOOL_SECTION_ID) {
+            overlay.selectArea(position, position, false, ChestConfigManager.getInstance().getCurrentLayout());
+            applyAreaSelection();
+            return;
+        }
+        this.isDraggingArea = true;
+        this.areaStart = position;
+        this.areaCurrent = position;
+    }
+
+    private void commitArea() {
+        if (areaStart < 0 || areaCurrent < 0) return;
+        overlay.selectArea(areaStart, areaCurrent, areaTool == TOOL_GRID_ID, null);
+        applyAreaSelection();
+    }
+
+    // Todo el conjunto de bordes en una llamada: una entrada de diario, un paso de deshacer y un solo guardado.
+    // La geometría se reconstruye una vez, en el siguiente frame, al ver la nueva versión del layout.
+    private void applyAreaSelection() {
+        int colorRef = selectedColorIndex == TOOL_ERASER_ID ? ColorTable.NONE : getCurrentSelectedColorRef();
+        AreaSelection areaSelection = overlay.getAreaSelection();
+        if (ChestConfigManager.getInstance().applyEdges(areaSelection.slotIndices(), areaSelection.masks(), areaSelection.size(), colorRef)) {
+            saveSmart();
+            playClickSound(1.0f);
         }
     }
 
+    // Muestra los bordes que tocaría la herramienta: el rectángulo arrastrado, la celda bajo el ratón o su sección.
+    private void renderAreaPreview(DrawContext context, int mouseX, int mouseY) {
+        int color = getPreviewColor();
+        if (color == 0) return;
+        int from = isDraggingArea ? areaStart : containerSlotPositionAt(mouseX, mouseY);
+        if (from < 0) return;
+        int to = isDraggingArea ? areaCurrent : from;
+        ChestLayout sectionOf = !isDraggingArea && areaTool == TOOL_SECTION_ID ? ChestConfigManager.getInstance().getCurrentLayout() : null;
+        overlay.selectArea(from, to, areaTool == TOOL_GRID_ID, sectionOf);
+        contextSink.context = context;
+        overlay.renderAreaSelection(contextSink, accessor.getX(), accessor.getY(), color);
+        contextSink.context = null;
+    }
+
+    private void renderHoverPreview(DrawContext context, int mouseX, int mouseY) {
+        int color = getPreviewColor();
+        if (color == 0) return;
+        contextSink.context = context;
+        overlay.renderHoverPreview(contextSink, accessor.getX(), accessor.getY(), mouseX, mouseY, color);
+        contextSink.context = null;
+    }
+
     private void renderDragPreview(DrawContext context) {
         if (!isDraggingLine) return;
-        List<Slot> activeSlots = calculateAffectedSlots();
-        if (!activeSlots.isEmpty()) {
-            int colorVal = getCurrentSelectedColorValue();
-            if (colorVal == 0 && selectedColorIndex != TOOL_ERASER_ID) return;
-
-            int color = (selectedColorIndex == TOOL_ERASER_ID) ? 0x88FFFFFF : (colorVal & 0x00FFFFFF) | 0x88000000;
-            int guiX = accessor.getX();
-            int guiY = accessor.getY();
-
-            for (Slot slot : activeSlots) {
-                int x = guiX + slot.x; int y = guiY + slot.y;
-                if ((currentDragAction & ChestConfigManager.ACTION_TOP) != 0) context.fill(x - 1, y - 1, x + 17, y, color);
-                if ((currentDragAction & ChestConfigManager.ACTION_BOTTOM) != 0) context.fill(x - 1, y + 16, x + 17, y + 17, color);
-                if ((currentDragAction & ChestConfigManager.ACTION_LEFT) != 0) context.fill(x - 1, y - 1, x, y + 17, color);
-                if ((currentDragAction & ChestConfigManager.ACTION_RIGHT) != 0) context.fill(x + 16, y - 1, x + 17, y + 17, color);
-            }
-        }
+        int color = getPreviewColor();
+        if (color == 0) return;
+        contextSink.context = context;
+        overlay.renderDragPreview(contextSink, accessor.getX(), accessor.getY(), dragStart, dragCurrent, currentDragAction, color);
+        contextSink.context = null;
+    }
+
+    // Color translúcido de las previsualizaciones, o 0 si con la selección actual no se pinta nada
+    private int getPreviewColor() {
+        if (selectedColorIndex == TOOL_ERASER_ID) return 0x88FFFFFF;
+        int colorVal = getCurrentSelectedColorValue();
+        return colorVal == 0 ? 0 : (colorVal & 0x00FFFFFF) | 0x88000000;
     }
 
     private boolean isHovering(int x, int y, int width, int height, double mouseX, double mouseY) {
@@ -994,7 +1116,7 @@ public class ChestSeparatorsEditor {
 
     private void toggleEditMode() {
         this.isEditMode = !this.isEditMode;
-        if (this.entryButton != null) this.entryButton.setMessage(Text.literal(this.isEditMode ? "✖" : "✎"));
+        if (this.entryButton != null) this.entryButton.setMessage(this.isEditMode ? CLOSE_LABEL : EDIT_LABEL);
         if (!this.isEditMode) {
             GlobalChestConfig.saveConfig();
             this.editingCustomIndex = -1;
@@ -1035,44 +1157,16 @@ public class ChestSeparatorsEditor {
         return 0;
     }
 
-    private int calculateAction(Slot slot, double mouseX, double mouseY) {
-        int guiX = accessor.getX(); int guiY = accessor.getY();
-        double relativeX = mouseX - (guiX + slot.x); double relativeY = mouseY - (guiY + slot.y);
-        double distTop = Math.abs(relativeY); double distBottom = Math.abs(relativeY - 16);
-        double distLeft = Math.abs(relativeX); double distRight = Math.abs(relativeX - 16);
-        double minDist = Math.min(Math.min(distTop, distBottom), Math.min(distLeft, distRight));
-        if (minDist <= 5.0) {
-            if (minDist == distTop) return ChestConfigManager.ACTION_TOP;
-            else if (minDist == distBottom) return ChestConfigManager.ACTION_BOTTOM;
-            else if (minDist == distLeft) return ChestConfigManager.ACTION_LEFT;
-            else if (minDist == distRight) return ChestConfigManager.ACTION_RIGHT;
-        }
-        return 0;
+    // Ref que se guarda al pintar con la selección actual; los personalizados quedan enlazados o no según la config.
+    private int getCurrentSelectedColorRef() {
+        if (getCurrentSelectedColorValue() == 0) return ColorTable.NONE;
+        if (selectedColorIndex < 16) return ColorTable.standardRef(selectedColorIndex);
+        return ChestConfigManager.getInstance().getCustomColorRef(selectedColorIndex - 16);
     }
 
-    private List<Slot> calculateAffectedSlots() {
-        if (dragStartSlot == null || dragCurrentSlot == null) return new ArrayList<>();
-        List<Slot> slots = new ArrayList<>();
-        boolean isHorizontal = (currentDragAction & (ChestConfigManager.ACTION_TOP | ChestConfigManager.ACTION_BOTTOM)) != 0;
-        int startX = dragStartSlot.x; int startY = dragStartSlot.y;
-        int targetX = dragCurrentSlot.x; int targetY = dragCurrentSlot.y;
-        for (Slot slot : accessor.getHandler().slots) {
-            if (slot.inventory instanceof PlayerInventory) continue;
-            boolean inRange = false;
-            if (isHorizontal) {
-                if (slot.y == startY) {
-                    int minX = Math.min(startX, targetX); int maxX = Math.max(startX, targetX);
-                    if (slot.x >= minX && slot.x <= maxX) inRange = true;
-                }
-            } else {
-                if (slot.x == startX) {
-                    int minY = Math.min(startY, targetY); int maxY = Math.max(startY, targetY);
-                    if (slot.y >= minY && slot.y <= maxY) inRange = true;
-                }
-            }
-            if (inRange) slots.add(slot);
-        }
-        return slots;
+    // Borde más cercano (en píxeles enteros) desde la tabla de zonas de SlotGrid.
+    private int calculateAction(int position, double mouseX, double mouseY) {
+        return overlay.edgeActionAt(position, (int) Math.floor(mouseX) - accessor.getX(), (int) Math.floor(mouseY) - accessor.getY());
     }
 
     private void playClickSound(float pitch) {
@@ -1081,7 +1175,7 @@ public class ChestSeparatorsEditor {
         );
     }
 
-    public boolean keyPressed(int keyCode) {
+    public boolean keyPressed(int keyCode, int modifiers) {
         if (keyCode == GLFW.GLFW_KEY_ESCAPE && this.isEditMode) {
             if (isColorPickerOpen) {
                 isColorPickerOpen = false;
@@ -1090,6 +1184,26 @@ public class ChestSeparatorsEditor {
             }
             return true;
         }
+        // Ctrl+Z deshace; Ctrl+Y o Ctrl+Shift+Z rehace
+        if (this.isEditMode && !isColorPickerOpen && !isDraggingLine && !isDraggingArea && (modifiers & GLFW.GLFW_MOD_CONTROL) != 0) {
+            boolean shift = (modifiers & GLFW.GLFW_MOD_SHIFT) != 0;
+            if (keyCode == GLFW.GLFW_KEY_Z && !shift) {
+                applyHistoryStep(ChestConfigManager.getInstance().undo(), UNDONE_MESSAGE);
+                return true;
+            }
+            if (keyCode == GLFW.GLFW_KEY_Y || (keyCode == GLFW.GLFW_KEY_Z && shift)) {
+                applyHistoryStep(ChestConfigManager.getInstance().redo(), REDONE_MESSAGE);
+                return true;
+            }
+        }
         return false;
     }
+
+    // Un paso deshecho o rehecho se guarda como cualquier otra edición
+    private void applyHistoryStep(boolean changed, Text message) {
+        if (!changed) return;
+        saveSmart();
+        playClickSound(1.0f);
+        showStatus(message, Formatting.GRAY);
+    }
 }
\ No newline at end of file
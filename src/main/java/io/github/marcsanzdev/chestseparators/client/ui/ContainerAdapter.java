@@ -0,0 +1,28 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.screen.slot.Slot;
+
+// Bridge between a container screen and the editor.
+// Decides whether separators can be edited on a HandledScreen, which of its handler's slots belong to the
+// container (they are laid out on the SlotGrid and get separators) and which part of the screen is actually
+// visible, so that screens with hundreds of slots behind a scroll pane only draw what can be seen.
+// Mods with their own storage screens can register an adapter in ContainerAdapters.
+public interface ContainerAdapter {
+
+    boolean supports(HandledScreen<?> screen);
+
+    default boolean isContainerSlot(Slot slot) {
+        return !(slot.inventory instanceof PlayerInventory);
+    }
+
+    // Writes the visible area of the container, in screen coordinates, as {x1, y1, x2, y2} into 'area'.
+    // The default is the whole screen; scrolling screens should return their scissor rectangle.
+    default void getVisibleArea(HandledScreen<?> screen, int[] area) {
+        area[0] = 0;
+        area[1] = 0;
+        area[2] = screen.width;
+        area[3] = screen.height;
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import io.github.marcsanzdev.chestseparators.util.ChestPosStorage;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.ChestBlockEntity;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.vehicle.VehicleInventory;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.screen.Generic3x3ContainerScreenHandler;
+import net.minecraft.screen.GenericContainerScreenHandler;
+import net.minecraft.screen.HopperScreenHandler;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.ShulkerBoxScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Registry of container adapters. Adapters registered later are asked first; the built-in one accepts the
+// vanilla storage screens (chests, barrels, shulker boxes, hoppers, dispensers, and modded storage built on
+// them) when the screen really belongs to the block or entity the player just interacted with: the block
+// still holds an inventory of the screen's size, or the entity is still there and its inventory matches.
+@Environment(EnvType.CLIENT)
+public final class ContainerAdapters {
+
+    public static final ContainerAdapter DEFAULT = new HandledScreenAdapter();
+
+    private static final List<ContainerAdapter> ADAPTERS = new ArrayList<>();
+
+    private ContainerAdapters() {
+    }
+
+    public static synchronized void register(ContainerAdapter adapter) {
+        ADAPTERS.add(0, adapter);
+    }
+
+    // Adapter for the screen, or null when the editor should stay out of it.
+    public static synchronized ContainerAdapter find(HandledScreen<?> screen) {
+        for (ContainerAdapter adapter : ADAPTERS) {
+            if (adapter.supports(screen)) return adapter;
+        }
+        return DEFAULT.supports(screen) ? DEFAULT : null;
+    }
+
+    private static final class HandledScreenAdapter implements ContainerAdapter {
+
+        // Cofre de ender: su inventario es del jugador, no del bloque
+        private static final int ENDER_CHEST_SLOTS = 27;
+
+        @Override
+        public boolean supports(HandledScreen<?> screen) {
+            // Hornos, mesas de encantar, aldeanos...: sólo las pantallas de almacenamiento
+            ScreenHandler handler = screen.getScreenHandler();
+            if (!(handler instanceof GenericContainerScreenHandler || handler instanceof ShulkerBoxScreenHandler
+                    || handler instanceof HopperScreenHandler || handler instanceof Generic3x3ContainerScreenHandler)) {
+                return false;
+            }
+            int containerSlots = countContainerSlots(screen);
+            World world = MinecraftClient.getInstance().world;
+            if (containerSlots == 0 || world == null) return false;
+            return ChestPosStorage.isEntityOpened
+                    ? matchesEntity(world, containerSlots)
+                    : matchesBlock(world, handler, containerSlots);
+        }
+
+        private boolean matchesEntity(World world, int containerSlots) {
+            Entity entity = world.getEntityById(ChestPosStorage.lastClickedEntityId);
+            if (entity == null || !entity.getUuid().equals(ChestPosStorage.lastClickedEntityUUID)) return false;
+            return !(entity instanceof VehicleInventory inventory) || inventory.size() == containerSlots;
+        }
+
+        private boolean matchesBlock(World world, ScreenHandler handler, int containerSlots) {
+            BlockPos pos = ChestPosStorage.lastClickedPos;
+            if (pos == null || !world.getRegistryKey().getValue().toString().equals(ChestPosStorage.lastClickedDimension)) {
+                return false;
+            }
+            if (world.getBlockState(pos).getBlock() == Blocks.ENDER_CHEST) {
+                return handler instanceof GenericContainerScreenHandler && containerSlots == ENDER_CHEST_SLOTS;
+            }
+            // El cofre doble se guarda en la mitad principal, que sólo tiene la mitad de los slots
+            if (!(world.getBlockEntity(pos) instanceof Inventory inventory)) return false;
+            return inventory.size() == containerSlots
+                    || (inventory instanceof ChestBlockEntity && inventory.size() * 2 == containerSlots);
+        }
+
+        private int countContainerSlots(HandledScreen<?> screen) {
+            int count = 0;
+            for (Slot slot : screen.getScreenHandler().slots) {
+                if (isContainerSlot(slot)) count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import io.github.marcsanzdev.chestseparators.data.ChestConfigManager;
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.ColorTable;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+// The part of the editor's frame that does not touch Minecraft: hit-testing of the sidebar and the container
+// slots, the cached geometry of the saved lines and the drag / hover / area previews. Everything is drawn
+// through a RectSink; ChestSeparatorsEditor hands it one backed by the DrawContext. All buffers are sized
+// when the screen's slots are set, so a steady-state frame does not allocate.
+@Environment(EnvType.CLIENT)
+public final class EditorOverlay {
+
+    private static final int[] EDGE_ACTIONS = {
+            ChestConfigManager.ACTION_TOP, ChestConfigManager.ACTION_BOTTOM,
+            ChestConfigManager.ACTION_LEFT, ChestConfigManager.ACTION_RIGHT
+    };
+
+    // Controles de la barra lateral, relativos a su esquina; solo se mueve el origen al redimensionar
+    private final SidebarHitMap sidebar = buildSidebarHitMap();
+    private final SeparatorGeometry savedLines = new SeparatorGeometry();
+
+    // Slots del contenedor: índice en el inventario y posición en el GUI
+    private int[] slotIndices = new int[0];
+    private int[] slotX = new int[0];
+    private int[] slotY = new int[0];
+    private int slotCount = 0;
+    // Filas/columnas de los slots; un arrastre es un rango de celdas
+    private SlotGrid grid = new SlotGrid(slotX, slotY, 0);
+    private int[] dragSelection = new int[0];
+    private AreaSelection areaSelection = new AreaSelection(grid, slotIndices, slotX, slotY, 0);
+
+    // Same positions as the editor's drawSidebar, relative to (sidebar x, gui y + SIDEBAR_Y_OFFSET).
+    private static SidebarHitMap buildSidebarHitMap() {
+        int swatch = ChestSeparatorsEditor.SWATCH_SIZE;
+        int tool = ChestSeparatorsEditor.TOOL_BTN_SIZE;
+        int rowSpacing = ChestSeparatorsEditor.TOOL_ROW_SPACING;
+        SidebarHitMap map = new SidebarHitMap(ChestSeparatorsEditor.SIDEBAR_WIDTH, ChestSeparatorsEditor.PALETTE_BOX_OFFSET + 135);
+        int contentX = 7;
+        map.add(ChestSeparatorsEditor.TOOL_ERASER_ID, contentX, 0, tool, tool);
+        map.add(100, contentX + 22, 0, tool, tool);
+        map.add(101, contentX + 44, 0, tool, tool);
+        map.add(102, contentX + 66, 0, tool, tool);
+        map.add(ChestSeparatorsEditor.TOOL_OUTLINE_ID, contentX, rowSpacing, tool, tool);
+        map.add(ChestSeparatorsEditor.TOOL_GRID_ID, contentX + 22, rowSpacing, tool, tool);
+        map.add(ChestSeparatorsEditor.TOOL_SECTION_ID, contentX + 44, rowSpacing, tool, tool);
+
+        int pX = contentX + 8;
+        int pY = ChestSeparatorsEditor.PALETTE_BOX_OFFSET + 4;
+        int col3X = pX + (swatch + 4) * 2 + 4;
+        for (int i = 0; i < 16; i++) {
+            int x = pX + (i / 8) * (swatch + 4);
+            map.add(i, x, pY + (i % 8) * (swatch + 4), swatch, swatch);
+        }
+        for (int i = 0; i < 8; i++) {
+            map.add(16 + i, col3X, pY + i * (swatch + 4), swatch, swatch);
+        }
+        map.add(103, col3X + swatch + 6, pY + 3 * (swatch + 4), 20, 20);
+        return map;
+    }
+
+    // Las posiciones de los slots no cambian mientras la pantalla está abierta: se fijan una vez en init().
+    public void setSlots(int[] slotIndices, int[] slotX, int[] slotY, int slotCount) {
+        this.slotIndices = slotIndices;
+        this.slotX = slotX;
+        this.slotY = slotY;
+        this.slotCount = slotCount;
+        this.grid = new SlotGrid(slotX, slotY, slotCount);
+        this.dragSelection = new int[slotCount];
+        this.areaSelection = new AreaSelection(grid, slotIndices, slotX, slotY, slotCount);
+        savedLines.markDirty();
+    }
+
+    public SlotGrid getGrid() {
+        return grid;
+    }
+
+    public AreaSelection getAreaSelection() {
+        return areaSelection;
+    }
+
+    // --- HIT-TEST ---
+
+    // Sidebar control under the mouse (SidebarHitMap.MISS if none); the origin follows the GUI if it moved.
+    public int sidebarControlAt(int originX, int originY, double mouseX, double mouseY) {
+        sidebar.setOrigin(originX, originY);
+        return sidebar.at(mouseX, mouseY);
+    }
+
+    // Position in the slot arrays of the container slot under a GUI-relative point, or -1.
+    public int slotAt(int x, int y) {
+        return grid.slotAtPoint(x, y);
+    }
+
+    // ChestConfigManager.ACTION_* of the edge of the slot at 'position' nearest to the GUI-relative point, or 0.
+    public int edgeActionAt(int position, int x, int y) {
+        int edge = SlotGrid.edgeAt(x - slotX[position], y - slotY[position]);
+        return edge < 0 ? 0 : EDGE_ACTIONS[edge];
+    }
+
+    // Fills the drag selection with the positions a line drawn from one slot to another covers.
+    public int collectDrag(int startPosition, int currentPosition, int action) {
+        if (startPosition < 0 || currentPosition < 0) return 0;
+        boolean horizontal = (action & (ChestConfigManager.ACTION_TOP | ChestConfigManager.ACTION_BOTTOM)) != 0;
+        return grid.collect(slotX[startPosition], slotY[startPosition], slotX[currentPosition], slotY[currentPosition], horizontal, dragSelection);
+    }
+
+    // Inventory slot index of the i-th entry of the last collectDrag().
+    public int dragSlotIndex(int i) {
+        return slotIndices[dragSelection[i]];
+    }
+
+    // Rectangle between two positions (only its outline unless fullGrid), or the section around 'from' when
+    // 'sectionOf' is given. The result stays in getAreaSelection().
+    public int selectArea(int from, int to, boolean fullGrid, ChestLayout sectionOf) {
+        if (sectionOf != null) return areaSelection.section(from, sectionOf);
+        return areaSelection.rectangle(from, to, fullGrid);
+    }
+
+    // --- DIBUJO ---
+
+    // Saved lines in GUI coordinates, only the quads inside the clip. The geometry is rebuilt only when the
+    // layout or the colour table changed since the last frame.
+    public void renderSavedLines(RectSink sink, ChestLayout layout, ColorTable table, int clipX1, int clipY1, int clipX2, int clipY2) {
+        if (layout.isEmpty()) return;
+        if (savedLines.needsRebuild(layout, table)) {
+            savedLines.build(layout, table, slotIndices, slotX, slotY, slotCount);
+        }
+        savedLines.replay(sink, clipX1, clipY1, clipX2, clipY2);
+    }
+
+    // Edge under the mouse, in screen coordinates (guiX/guiY: corner of the GUI).
+    public void renderHoverPreview(RectSink sink, int guiX, int guiY, int mouseX, int mouseY, int color) {
+        int position = slotAt(mouseX - guiX, mouseY - guiY);
+        if (position < 0) return;
+        int action = edgeActionAt(position, mouseX - guiX, mouseY - guiY);
+        if (action != 0) fillEdges(sink, guiX + slotX[position], guiY + slotY[position], action, color);
+    }
+
+    public void renderDragPreview(RectSink sink, int guiX, int guiY, int startPosition, int currentPosition, int action, int color) {
+        int count = collectDrag(startPosition, currentPosition, action);
+        for (int i = 0; i < count; i++) {
+            fillEdges(sink, guiX + slotX[dragSelection[i]], guiY + slotY[dragSelection[i]], action, color);
+        }
+    }
+
+    // Draws the current content of getAreaSelection().
+    public void renderAreaSelection(RectSink sink, int guiX, int guiY, int color) {
+        for (int i = 0; i < areaSelection.size(); i++) {
+            int position = areaSelection.position(i);
+            fillEdges(sink, guiX + slotX[position], guiY + slotY[position], areaSelection.mask(i), color);
+        }
+    }
+
+    // Una línea de 1 px por borde marcado, sobre el hueco entre slots
+    private static void fillEdges(RectSink sink, int x, int y, int mask, int color) {
+        if ((mask & ChestConfigManager.ACTION_TOP) != 0) sink.fill(x - 1, y - 1, x + 17, y, color);
+        if ((mask & ChestConfigManager.ACTION_BOTTOM) != 0) sink.fill(x - 1, y + 16, x + 17, y + 17, color);
+        if ((mask & ChestConfigManager.ACTION_LEFT) != 0) sink.fill(x - 1, y - 1, x, y + 17, color);
+        if ((mask & ChestConfigManager.ACTION_RIGHT) != 0) sink.fill(x + 16, y - 1, x + 17, y + 17, color);
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.RenderPipelines;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.NativeImageBackedTexture;
+import net.minecraft.util.Identifier;
+
+import java.awt.Color;
+
+// Pre-baked textures for the color picker.
+// The saturation/value square only depends on the current hue, and the hue bar never changes,
+// so both are rasterized into dynamic textures once (the square again only when the hue moves)
+// and drawn as a single textured quad each, instead of thousands of fills per frame.
+@Environment(EnvType.CLIENT)
+public class HsvPickerTexture {
+
+    public static final int SV_SIZE = 100;
+    public static final int HUE_WIDTH = 20;
+    public static final int HUE_HEIGHT = 100;
+
+    private static final Identifier SV_TEXTURE_ID = Identifier.of("chestseparators", "dynamic/picker_sv");
+    private static final Identifier HUE_TEXTURE_ID = Identifier.of("chestseparators", "dynamic/picker_hue");
+
+    private static NativeImageBackedTexture svTexture;
+    private static NativeImageBackedTexture hueTexture;
+    private static float bakedHue = Float.NaN;
+
+    private HsvPickerTexture() {}
+
+    public static void drawSaturationValueBox(DrawContext context, int x, int y, float hue) {
+        ensureTextures();
+        if (hue != bakedHue) {
+            bakeSaturationValue(hue);
+        }
+        context.drawTexture(RenderPipelines.GUI_TEXTURED, SV_TEXTURE_ID, x, y, 0.0f, 0.0f, SV_SIZE, SV_SIZE, SV_SIZE, SV_SIZE);
+    }
+
+    public static void drawHueBar(DrawContext context, int x, int y) {
+        ensureTextures();
+        context.drawTexture(RenderPipelines.GUI_TEXTURED, HUE_TEXTURE_ID, x, y, 0.0f, 0.0f, HUE_WIDTH, HUE_HEIGHT, HUE_WIDTH, HUE_HEIGHT);
+    }
+
+    private static void ensureTextures() {
+        if (svTexture != null) return;
+
+        svTexture = new NativeImageBackedTexture(() -> "chestseparators_picker_sv", new NativeImage(SV_SIZE, SV_SIZE, false));
+        hueTexture = new NativeImageBackedTexture(() -> "chestseparators_picker_hue", new NativeImage(HUE_WIDTH, HUE_HEIGHT, false));
+        MinecraftClient.getInstance().getTextureManager().registerTexture(SV_TEXTURE_ID, svTexture);
+        MinecraftClient.getInstance().getTextureManager().registerTexture(HUE_TEXTURE_ID, hueTexture);
+
+        NativeImage hueImage = hueTexture.getImage();
+        for (int j = 0; j < HUE_HEIGHT; j++) {
+            int color = Color.HSBtoRGB((float) j / HUE_HEIGHT, 1.0f, 1.0f);
+            for (int i = 0; i < HUE_WIDTH; i++) {
+                hueImage.setColorArgb(i, j, color);
+            }
+        }
+        hueTexture.upload();
+    }
+
+    private static void bakeSaturationValue(float hue) {
+        NativeImage image = svTexture.getImage();
+        for (int i = 0; i < SV_SIZE; i++) {
+            float sat = (float) i / SV_SIZE;
+            for (int j = 0; j < SV_SIZE; j++) {
+                float val = 1.0f - ((float) j / SV_SIZE);
+                image.setColorArgb(i, j, Color.HSBtoRGB(hue, sat, val));
+            }
+        }
+        svTexture.upload();
+        bakedHue = hue;
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+// Minimal drawing target for precomputed geometry.
+// DrawContext#fill matches this signature; keeping the renderer behind it lets the geometry
+// be replayed into anything (a stub in benchmarks, a recorder, the real GUI context).
+@FunctionalInterface
+public interface RectSink {
+    void fill(int x1, int y1, int x2, int y2, int color);
+}
@@ -0,0 +1,221 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.ColorTable;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Precomputed quads for the saved separator lines of the open container.
+// The layout only changes when the user paints, so instead of issuing up to four fills per slot
+// every frame, the edges are turned once into rectangles, collinear same-colour segments that touch
+// along a row or column are fused into a single quad, and the resulting list is replayed each frame.
+// A border shared by two neighbouring slots is one entry of the layout grid and is emitted once, by the slot
+// above or to the left, instead of once per slot.
+// Quads are also bucketed into horizontal bands, so a replay clipped to the visible area only walks the bands
+// it overlaps: on containers with hundreds of slots behind a scroll pane the frame cost follows what is shown.
+@Environment(EnvType.CLIENT)
+public class SeparatorGeometry {
+
+    // x1, y1, x2, y2, color
+    private static final int STRIDE = 5;
+
+    private int[] rects = new int[0];
+    private int rectCount = 0;
+
+    // --- BANDAS ---
+    // Alto de banda: 1 << BAND_SHIFT píxeles
+    private static final int BAND_SHIFT = 6;
+    private int bandOrigin = 0;
+    private int bandCount = 0;
+    // bandRects[bandStart[b] .. bandStart[b + 1]) = quads que tocan la banda b
+    private int[] bandStart = new int[1];
+    private int[] bandRects = new int[0];
+
+    private int[] positions = new int[0];
+
+    private ChestLayout builtFor = null;
+    private long builtVersion = -1;
+    // Editing a linked custom colour changes what the refs resolve to without touching the layout
+    private ColorTable builtTable = null;
+    private long builtTableVersion = -1;
+    private boolean dirty = true;
+
+    public void markDirty() {
+        this.dirty = true;
+    }
+
+    public boolean needsRebuild(ChestLayout layout, ColorTable table) {
+        return dirty || layout != builtFor || layout.getVersion() != builtVersion
+                || table != builtTable || table.getVersion() != builtTableVersion;
+    }
+
+    // Slots are given as parallel arrays (inventory index, x, y) of the container slots only.
+    public void build(ChestLayout layout, ColorTable table, int[] slotIndices, int[] slotX, int[] slotY, int slotCount) {
+        List<int[]> horizontal = new ArrayList<>();
+        List<int[]> vertical = new ArrayList<>();
+        indexSlots(slotIndices, slotCount);
+        int columns = layout.getColumns();
+
+        for (int i = 0; i < slotCount; i++) {
+            int index = slotIndices[i];
+            if (!layout.isOccupied(index)) continue;
+            int x = slotX[i];
+            int y = slotY[i];
+
+            // Arriba/izquierda solo si el vecino que comparte el borde no está justo ahí (ya lo dibuja él)
+            int above = index >= columns ? positionOf(index - columns) : -1;
+            if (above < 0 || slotX[above] != x || slotY[above] >= y) {
+                addSegment(horizontal, x - 1, y - 1, x + 17, y, table.resolve(layout.getRef(index, ChestLayout.EDGE_TOP)));
+            }
+            addSegment(horizontal, x - 1, y + 16, x + 17, y + 17, table.resolve(layout.getRef(index, ChestLayout.EDGE_BOTTOM)));
+            int left = index % columns != 0 ? positionOf(index - 1) : -1;
+            if (left < 0 || slotY[left] != y || slotX[left] >= x) {
+                addSegment(vertical, x - 1, y - 1, x, y + 17, table.resolve(layout.getRef(index, ChestLayout.EDGE_LEFT)));
+            }
+            addSegment(vertical, x + 16, y - 1, x + 17, y + 17, table.resolve(layout.getRef(index, ChestLayout.EDGE_RIGHT)));
+        }
+
+        rectCount = 0;
+        ensureRects(horizontal.size() + vertical.size());
+
+        // Filas: misma y y mismo color, ordenados por x
+        horizontal.sort(Comparator.<int[]>comparingInt(r -> r[1]).thenComparingInt(r -> r[3])
+                .thenComparingInt(r -> r[4]).thenComparingInt(r -> r[0]));
+        mergeRuns(horizontal, true);
+
+        // Columnas: misma x y mismo color, ordenados por y
+        vertical.sort(Comparator.<int[]>comparingInt(r -> r[0]).thenComparingInt(r -> r[2])
+                .thenComparingInt(r -> r[4]).thenComparingInt(r -> r[1]));
+        mergeRuns(vertical, false);
+        buildBands();
+
+        builtFor = layout;
+        builtVersion = layout.getVersion();
+        builtTable = table;
+        builtTableVersion = table.getVersion();
+        dirty = false;
+    }
+
+    public void replay(RectSink sink) {
+        int[] r = rects;
+        for (int i = 0, o = 0; i < rectCount; i++, o += STRIDE) {
+            sink.fill(r[o], r[o + 1], r[o + 2], r[o + 3], r[o + 4]);
+        }
+    }
+
+    // Replays only the quads that intersect [clipX1, clipX2) x [clipY1, clipY2), in geometry coordinates.
+    public void replay(RectSink sink, int clipX1, int clipY1, int clipX2, int clipY2) {
+        if (rectCount == 0 || clipX1 >= clipX2 || clipY1 >= clipY2) return;
+        int firstBand = Math.max(0, (clipY1 - bandOrigin) >> BAND_SHIFT);
+        int lastBand = Math.min(bandCount - 1, (clipY2 - 1 - bandOrigin) >> BAND_SHIFT);
+        int[] r = rects;
+        for (int band = firstBand; band <= lastBand; band++) {
+            for (int i = bandStart[band]; i < bandStart[band + 1]; i++) {
+                int o = bandRects[i] * STRIDE;
+                // Un quad alto está en varias bandas: se dibuja solo en la primera que se recorre
+                if (band != firstBand && bandOf(r[o + 1]) < band) continue;
+                if (r[o + 2] <= clipX1 || r[o] >= clipX2 || r[o + 3] <= clipY1 || r[o + 1] >= clipY2) continue;
+                sink.fill(r[o], r[o + 1], r[o + 2], r[o + 3], r[o + 4]);
+            }
+        }
+    }
+
+    public int getRectCount() {
+        return rectCount;
+    }
+
+    // Índice de inventario -> posición en los arrays de slots (o -1), reutilizado entre builds
+    private void indexSlots(int[] slotIndices, int slotCount) {
+        int max = -1;
+        for (int i = 0; i < slotCount; i++) max = Math.max(max, slotIndices[i]);
+        if (positions.length < max + 1) positions = new int[max + 1];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < slotCount; i++) positions[slotIndices[i]] = i;
+    }
+
+    private int positionOf(int index) {
+        return index < positions.length ? positions[index] : -1;
+    }
+
+    private static void addSegment(List<int[]> out, int x1, int y1, int x2, int y2, int color) {
+        if (color == 0) return;
+        out.add(new int[]{x1, y1, x2, y2, color});
+    }
+
+    private void mergeRuns(List<int[]> segments, boolean alongX) {
+        int[] run = null;
+        for (int[] seg : segments) {
+            if (run != null && sameLine(run, seg, alongX) && seg[alongX ? 0 : 1] <= run[alongX ? 2 : 3]) {
+                // Se tocan o se solapan: se alarga el rectángulo en curso
+                int end = alongX ? 2 : 3;
+                run[end] = Math.max(run[end], seg[end]);
+                continue;
+            }
+            if (run != null) emit(run);
+            run = seg.clone();
+        }
+        if (run != null) emit(run);
+    }
+
+    private static boolean sameLine(int[] a, int[] b, boolean alongX) {
+        if (a[4] != b[4]) return false;
+        return alongX ? (a[1] == b[1] && a[3] == b[3]) : (a[0] == b[0] && a[2] == b[2]);
+    }
+
+    private void emit(int[] rect) {
+        int o = rectCount * STRIDE;
+        System.arraycopy(rect, 0, rects, o, STRIDE);
+        rectCount++;
+    }
+
+    private int bandOf(int y) {
+        return Math.max(0, (y - bandOrigin) >> BAND_SHIFT);
+    }
+
+    // Counting sort of the quads into the bands they overlap (CSR layout, no per-band lists).
+    private void buildBands() {
+        int[] r = rects;
+        if (rectCount == 0) {
+            bandCount = 0;
+            return;
+        }
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0, o = 0; i < rectCount; i++, o += STRIDE) {
+            minY = Math.min(minY, r[o + 1]);
+            maxY = Math.max(maxY, r[o + 3]);
+        }
+        bandOrigin = minY;
+        bandCount = ((maxY - 1 - minY) >> BAND_SHIFT) + 1;
+        if (bandStart.length < bandCount + 1) bandStart = new int[bandCount + 1];
+        Arrays.fill(bandStart, 0, bandCount + 1, 0);
+
+        int entries = 0;
+        for (int i = 0, o = 0; i < rectCount; i++, o += STRIDE) {
+            for (int b = bandOf(r[o + 1]); b <= bandOf(r[o + 3] - 1); b++) {
+                bandStart[b + 1]++;
+                entries++;
+            }
+        }
+        for (int b = 0; b < bandCount; b++) bandStart[b + 1] += bandStart[b];
+        if (bandRects.length < entries) bandRects = new int[entries];
+
+        int[] fill = Arrays.copyOf(bandStart, bandCount);
+        for (int i = 0, o = 0; i < rectCount; i++, o += STRIDE) {
+            for (int b = bandOf(r[o + 1]); b <= bandOf(r[o + 3] - 1); b++) {
+                bandRects[fill[b]++] = i;
+            }
+        }
+    }
+
+    private void ensureRects(int count) {
+        if (rects.length < count * STRIDE) {
+            rects = new int[count * STRIDE];
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.Arrays;
+
+// Pixel map of the clickable controls of a screen area (tool buttons, swatches...), relative to its origin.
+// Controls are registered once as rectangles; every pixel stores which control covers it, so resolving the
+// control under the mouse is one array read instead of a hover test per control. The map does not depend on
+// where the area is drawn: moving it (screen resized, GUI scale changed) only moves the origin.
+@Environment(EnvType.CLIENT)
+public final class SidebarHitMap {
+
+    // Valor devuelto fuera de cualquier control
+    public static final int MISS = Integer.MIN_VALUE;
+
+    private final int width;
+    private final int height;
+    // Índice en 'ids' + 1 por píxel; 0 = ningún control
+    private final byte[] cells;
+    private int[] ids = new int[0];
+
+    private int originX;
+    private int originY;
+
+    public SidebarHitMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cells = new byte[width * height];
+    }
+
+    // Registers a control; where rectangles overlap the one added last wins.
+    public void add(int id, int x, int y, int w, int h) {
+        if (ids.length >= Byte.MAX_VALUE) throw new IllegalStateException("Too many controls in hit map");
+        ids = Arrays.copyOf(ids, ids.length + 1);
+        ids[ids.length - 1] = id;
+        byte code = (byte) ids.length;
+        int x0 = Math.max(0, x), x1 = Math.min(width, x + w);
+        int y0 = Math.max(0, y), y1 = Math.min(height, y + h);
+        for (int row = y0; row < y1; row++) {
+            Arrays.fill(cells, row * width + x0, row * width + Math.max(x0, x1), code);
+        }
+    }
+
+    // Returns true when the origin changed, i.e. the screen was laid out again.
+    public boolean setOrigin(int x, int y) {
+        if (x == originX && y == originY) return false;
+        originX = x;
+        originY = y;
+        return true;
+    }
+
+    // Id of the control under the given screen point, or MISS.
+    public int at(double mouseX, double mouseY) {
+        int x = (int) Math.floor(mouseX) - originX;
+        int y = (int) Math.floor(mouseY) - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height) return MISS;
+        int code = cells[y * width + x];
+        return code == 0 ? MISS : ids[code - 1];
+    }
+}
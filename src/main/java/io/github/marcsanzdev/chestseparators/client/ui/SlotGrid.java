@@ -0,0 +1,194 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.Arrays;
+
+// Row/column index of the container slots of the open screen, built once from the slot coordinates.
+// Rows are the distinct slot y values and columns the distinct x values, both sorted; every cell holds the
+// position of its slot in the editor's parallel slot arrays, or -1. A line drag then covers a contiguous
+// range of cells in one row or one column, so resolving it only visits the cells of that run.
+// Per-pixel row/column tables over the container area, plus a shared table of edge zones around a slot, turn
+// mouse hit-testing (which slot, which edge) into a few array reads regardless of the number of slots.
+@Environment(EnvType.CLIENT)
+public final class SlotGrid {
+
+    private final int[] columnX;
+    private final int[] rowY;
+    // rows * columns, fila a fila
+    private final int[] cells;
+    // Píxel (relativo al fondo del contenedor) -> columna / fila cuyo slot lo cubre, o -1
+    private final int[] columnAtPixel;
+    private final int[] rowAtPixel;
+
+    // --- ZONAS DE BORDE ---
+    // Distancia máxima al borde para que cuente como clic en la línea
+    public static final int EDGE_REACH = 5;
+    private static final int SLOT_SIZE = 16;
+    // Un slot tapa [x - 1, x + 17) como el hover vanilla
+    private static final int HOVER_MARGIN = 1;
+    private static final int ZONE_SPAN = SLOT_SIZE + 2 * EDGE_REACH + 1;
+    private static final byte[] EDGE_ZONES = buildEdgeZones();
+
+    public SlotGrid(int[] slotX, int[] slotY, int slotCount) {
+        this.columnX = distinctSorted(slotX, slotCount);
+        this.rowY = distinctSorted(slotY, slotCount);
+        this.cells = new int[columnX.length * rowY.length];
+        Arrays.fill(cells, -1);
+        for (int i = 0; i < slotCount; i++) {
+            int cell = rowOf(slotY[i]) * columnX.length + columnOf(slotX[i]);
+            // Dos slots en el mismo sitio (contenedores modificados): se queda el primero
+            if (cells[cell] == -1) cells[cell] = i;
+        }
+        this.columnAtPixel = pixelTable(columnX);
+        this.rowAtPixel = pixelTable(rowY);
+    }
+
+    public int getRows() {
+        return rowY.length;
+    }
+
+    public int getColumns() {
+        return columnX.length;
+    }
+
+    // Index of the column / row whose coordinate is exactly x / y, or -1.
+    public int columnOf(int x) {
+        int column = Arrays.binarySearch(columnX, x);
+        return column >= 0 ? column : -1;
+    }
+
+    public int rowOf(int y) {
+        int row = Arrays.binarySearch(rowY, y);
+        return row >= 0 ? row : -1;
+    }
+
+    public int columnX(int column) {
+        return columnX[column];
+    }
+
+    public int rowY(int row) {
+        return rowY[row];
+    }
+
+    // Slot array position at a cell, or -1 for a hole in the grid.
+    public int slotAt(int row, int column) {
+        return cells[row * columnX.length + column];
+    }
+
+    // Column count of the layout grid when the inventory indices follow the screen rows (index = first index +
+    // row * columns + column for every slot), as in every vanilla container; 0 when they do not.
+    public int rowMajorColumns(int[] slotIndices) {
+        int columns = columnX.length;
+        if (columns == 0) return 0;
+        int first = Integer.MAX_VALUE;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] >= 0) first = Math.min(first, slotIndices[cells[i]]);
+        }
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] >= 0 && slotIndices[cells[i]] != first + i) return 0;
+        }
+        // Los índices empiezan en 0 en la práctica; si no, el desplazamiento tiene que caer en la columna 0
+        return first % columns == 0 ? columns : 0;
+    }
+
+    // Slot array position of the slot under a point relative to the container background, or -1.
+    public int slotAtPoint(int x, int y) {
+        if (x < 0 || y < 0 || x >= columnAtPixel.length || y >= rowAtPixel.length) return -1;
+        int column = columnAtPixel[x];
+        int row = rowAtPixel[y];
+        if (column < 0 || row < 0) return -1;
+        return cells[row * columnX.length + column];
+    }
+
+    // Edge (ChestLayout.EDGE_*) nearest to a point relative to a slot's top-left corner when it is within
+    // EDGE_REACH pixels of it, or -1. Ties go top, bottom, left, right.
+    public static int edgeAt(int relX, int relY) {
+        int x = relX + EDGE_REACH;
+        int y = relY + EDGE_REACH;
+        if (x < 0 || y < 0 || x >= ZONE_SPAN || y >= ZONE_SPAN) return -1;
+        return EDGE_ZONES[y * ZONE_SPAN + x];
+    }
+
+    // Horizontal drags (top/bottom edges) stay on the start row, vertical ones on the start column.
+    // Writes the slot array positions covered by the drag into 'out' and returns how many were written.
+    public int collect(int startX, int startY, int targetX, int targetY, boolean horizontal, int[] out) {
+        int row = rowOf(startY);
+        int column = columnOf(startX);
+        if (row < 0 || column < 0) return 0;
+        int count = 0;
+        if (horizontal) {
+            int from = column;
+            int to = columnOf(targetX);
+            if (to < 0) to = insertionPoint(columnX, targetX, targetX > startX);
+            int base = row * columnX.length;
+            for (int c = Math.min(from, to); c <= Math.max(from, to); c++) {
+                int slot = cells[base + c];
+                if (slot >= 0) out[count++] = slot;
+            }
+        } else {
+            int from = row;
+            int to = rowOf(targetY);
+            if (to < 0) to = insertionPoint(rowY, targetY, targetY > startY);
+            for (int r = Math.min(from, to); r <= Math.max(from, to); r++) {
+                int slot = cells[r * columnX.length + column];
+                if (slot >= 0) out[count++] = slot;
+            }
+        }
+        return count;
+    }
+
+    // Target between two columns/rows: the range stops at the last one not beyond it.
+    private static int insertionPoint(int[] sorted, int value, boolean forward) {
+        int insertion = -Arrays.binarySearch(sorted, value) - 1;
+        return forward ? Math.max(0, insertion - 1) : Math.min(sorted.length - 1, insertion);
+    }
+
+    private static int[] pixelTable(int[] starts) {
+        if (starts.length == 0) return new int[0];
+        int[] table = new int[starts[starts.length - 1] + SLOT_SIZE + HOVER_MARGIN];
+        Arrays.fill(table, -1);
+        for (int i = 0; i < starts.length; i++) {
+            int from = Math.max(0, starts[i] - HOVER_MARGIN);
+            // Slots solapados: el siguiente empieza donde acaba este
+            Arrays.fill(table, from, starts[i] + SLOT_SIZE + HOVER_MARGIN, i);
+        }
+        return table;
+    }
+
+    private static byte[] buildEdgeZones() {
+        byte[] zones = new byte[ZONE_SPAN * ZONE_SPAN];
+        for (int y = 0; y < ZONE_SPAN; y++) {
+            for (int x = 0; x < ZONE_SPAN; x++) {
+                int relX = x - EDGE_REACH;
+                int relY = y - EDGE_REACH;
+                int top = Math.abs(relY);
+                int bottom = Math.abs(relY - SLOT_SIZE);
+                int left = Math.abs(relX);
+                int right = Math.abs(relX - SLOT_SIZE);
+                int min = Math.min(Math.min(top, bottom), Math.min(left, right));
+                int edge = -1;
+                if (min <= EDGE_REACH) {
+                    if (min == top) edge = ChestLayout.EDGE_TOP;
+                    else if (min == bottom) edge = ChestLayout.EDGE_BOTTOM;
+                    else if (min == left) edge = ChestLayout.EDGE_LEFT;
+                    else edge = ChestLayout.EDGE_RIGHT;
+                }
+                zones[y * ZONE_SPAN + x] = (byte) edge;
+            }
+        }
+        return zones;
+    }
+
+    private static int[] distinctSorted(int[] values, int count) {
+        int[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) sorted[distinct++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+}
@@ -1,8 +1,8 @@
 package io.github.marcsanzdev.chestseparators.config;
 
+import io.github.marcsanzdev.chestseparators.data.LayoutCache;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
-import net.minecraft.client.MinecraftClient;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -14,18 +14,54 @@ public class GlobalChestConfig {
 
     private static final String CONFIG_FILE = "chestseparators_global.properties";
     private static boolean showEditButton = true;
+    private static int layoutCacheCapacity = LayoutCache.DEFAULT_CAPACITY;
+    // Opt-in: rewrite every old NBT layout of a world in the compact format the first time it is joined.
+    private static boolean convertToCompactFormat = false;
+    // Opt-in: lines painted with a custom colour follow later edits of that colour in every chest.
+    private static boolean linkCustomColors = false;
+    // Layouts of containers that no longer exist are deleted after this many seconds of being seen missing.
+    private static boolean collectOrphans = true;
+    private static int orphanGraceSeconds = 300;
+    // Stored layouts within this many blocks of the player are preloaded into the cache; 0 disables it.
+    private static int prefetchRadius = 24;
+    // Client "config" folder, set by the entry point at startup.
+    private static Path configDir;
 
     public static boolean isShowEditButton() {
         return showEditButton;
     }
 
+    public static int getLayoutCacheCapacity() {
+        return layoutCacheCapacity;
+    }
+
+    public static boolean isConvertToCompactFormat() {
+        return convertToCompactFormat;
+    }
+
+    public static boolean isLinkCustomColors() {
+        return linkCustomColors;
+    }
+
+    public static boolean isCollectOrphans() {
+        return collectOrphans;
+    }
+
+    public static int getOrphanGraceSeconds() {
+        return orphanGraceSeconds;
+    }
+
+    public static int getPrefetchRadius() {
+        return prefetchRadius;
+    }
+
     public static void toggleShowEditButton() {
         showEditButton = !showEditButton;
         saveConfig();
     }
 
-    public static void loadConfig() {
-        Path configDir = MinecraftClient.getInstance().runDirectory.toPath().resolve("config");
+    public static void loadConfig(Path dir) {
+        configDir = dir;
         Path file = configDir.resolve(CONFIG_FILE);
 
         if (!Files.exists(file)) {
@@ -37,13 +73,19 @@ public class GlobalChestConfig {
             Properties props = new Properties();
             props.load(in);
             showEditButton = Boolean.parseBoolean(props.getProperty("showEditButton", "true"));
+            layoutCacheCapacity = parseInt(props.getProperty("layoutCacheCapacity"), LayoutCache.DEFAULT_CAPACITY);
+            convertToCompactFormat = Boolean.parseBoolean(props.getProperty("convertToCompactFormat", "false"));
+            linkCustomColors = Boolean.parseBoolean(props.getProperty("linkCustomColors", "false"));
+            collectOrphans = Boolean.parseBoolean(props.getProperty("collectOrphans", "true"));
+            orphanGraceSeconds = Math.max(0, parseInt(props.getProperty("orphanGraceSeconds"), 300));
+            prefetchRadius = Math.max(0, parseInt(props.getProperty("prefetchRadius"), 24));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     public static void saveConfig() {
-        Path configDir = MinecraftClient.getInstance().runDirectory.toPath().resolve("config");
+        if (configDir == null) return;
         try {
             if (!Files.exists(configDir)) {
                 Files.createDirectories(configDir);
@@ -53,10 +95,25 @@ public class GlobalChestConfig {
             try (OutputStream out = Files.newOutputStream(file)) {
                 Properties props = new Properties();
                 props.setProperty("showEditButton", String.valueOf(showEditButton));
+                props.setProperty("layoutCacheCapacity", String.valueOf(layoutCacheCapacity));
+                props.setProperty("convertToCompactFormat", String.valueOf(convertToCompactFormat));
+                props.setProperty("linkCustomColors", String.valueOf(linkCustomColors));
+                props.setProperty("collectOrphans", String.valueOf(collectOrphans));
+                props.setProperty("orphanGraceSeconds", String.valueOf(orphanGraceSeconds));
+                props.setProperty("prefetchRadius", String.valueOf(prefetchRadius));
                 props.store(out, "Chest Separators Global Config");
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
 }
\ No newline at end of file
@@ -1,44 +1,65 @@
 package io.github.marcsanzdev.chestseparators.data;
 
+import io.github.marcsanzdev.chestseparators.config.GlobalChestConfig;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.nbt.NbtCompound;
-import net.minecraft.nbt.NbtIo;
-import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.util.math.BlockPos;
 
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 @Environment(EnvType.CLIENT)
 public class ChestConfigManager {
 
     private static final String MOD_ID = "chestseparators";
-    private static final String FOLDER_NAME = "separators";
-    private static final String ENDER_FILE_NAME = "ender_chest.dat";
-    private static final String PALETTE_FILE_NAME = "world_palette.dat";
 
     public static final int ACTION_TOP = 1;
     public static final int ACTION_BOTTOM = 2;
     public static final int ACTION_LEFT = 4;
     public static final int ACTION_RIGHT = 8;
 
-    private static final int IDX_TOP = 0;
-    private static final int IDX_BOTTOM = 1;
-    private static final int IDX_LEFT = 2;
-    private static final int IDX_RIGHT = 3;
-
-    private final Map<Integer, int[]> currentChestConfig = new HashMap<>();
-    private Map<Integer, int[]> clipboardConfig = null;
-    private int[] worldCustomColors = new int[8];
+    // Un cofre doble; se amplía al abrir contenedores más grandes
+    private static final int DEFAULT_SLOT_CAPACITY = 54;
+
+    private final ChestLayout currentChestConfig = new ChestLayout(DEFAULT_SLOT_CAPACITY);
+    // Columnas de la rejilla del contenedor abierto; 0 = se respeta la del layout guardado
+    private int gridColumns = 0;
+    private ChestLayout clipboardConfig = null;
+    // Reutilizado al pegar: el portapapeles ajustado a la rejilla abierta, para anotar la diferencia
+    private final ChestLayout pasteScratch = new ChestLayout(0);
+    // Colores estándar, los 8 personalizados del mundo y los escapes; los layouts sólo guardan refs a ella
+    private final ColorTable colorTable = new ColorTable();
+    private boolean paletteDirty = false;
+
+    private final WriteBehindQueue writer = new WriteBehindQueue();
+    // Backend de la sesión de mundo actual; null fuera de un mundo
+    private SeparatorStorage storage;
+    // Contenedor cuyo layout está cargado en currentChestConfig; sus ediciones se anotan en el diario
+    private ChestKey currentKey;
+    // Recolector de layouts huérfanos de la sesión; null si está desactivado o fuera de un mundo
+    private OrphanCollector orphanCollector;
+    // Precarga de los layouts cercanos al jugador; null si está desactivada o fuera de un mundo
+    private ProximityPrefetcher prefetcher;
+
+    // --- DESHACER ---
+    // Historial de los últimos contenedores editados en la sesión; se descarta el menos usado
+    private static final int MAX_HISTORIES = 8;
+    private final Map<ChestKey, EditHistory> histories = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ChestKey, EditHistory> eldest) {
+            return size() > MAX_HISTORIES;
+        }
+    };
+    // Historial de currentKey; null si no hay contenedor cargado
+    private EditHistory history;
+    private final EditHistory.BorderWriter historyWriter = this::writeHistoryBorder;
+    private boolean journalHistoryEdges;
 
     private static final ChestConfigManager INSTANCE = new ChestConfigManager();
 
@@ -48,218 +69,319 @@ public class ChestConfigManager {
 
     public void clearCurrentConfig() {
         currentChestConfig.clear();
+        currentKey = null;
+        history = null;
     }
 
+    // La paleta vive en memoria durante toda la sesión de mundo: abrir un contenedor no la lee de disco.
     public int[] getCustomColors() {
-        return worldCustomColors;
+        return colorTable.getCustomColors();
     }
 
+    // Con los colores enlazados, cambiar uno repinta todas las líneas que lo usan sin reescribir ningún cofre.
     public void setCustomColor(int index, int color) {
-        if (index >= 0 && index < worldCustomColors.length) {
-            worldCustomColors[index] = color;
+        if (colorTable.setCustomColor(index, color)) {
+            paletteDirty = true;
         }
     }
 
-    // --- CARGA/GUARDA PALETA (NIO) ---
+    public ColorTable getColorTable() {
+        return colorTable;
+    }
 
-    public void loadWorldPalette() {
-        worldCustomColors = new int[8];
-        Path path = getWorldConfigDir().resolve(PALETTE_FILE_NAME);
+    // Enlazado: la línea sigue al color personalizado. Si no, se guarda el color que tiene ahora.
+    public int getCustomColorRef(int index) {
+        if (GlobalChestConfig.isLinkCustomColors()) return ColorTable.customRef(index);
+        return colorTable.refForColor(colorTable.getCustomColors()[index]);
+    }
 
-        if (!Files.exists(path)) return;
+    // --- CARGA/GUARDA PALETA ---
 
-        try {
-            NbtCompound root = NbtIo.readCompressed(path, NbtSizeTracker.ofUnlimitedBytes());
-            if (root.contains("Palette")) {
-                root.getIntArray("Palette").ifPresent(loadedColors -> {
-                    if (loadedColors.length == 8) {
-                        worldCustomColors = loadedColors;
-                    } else {
-                        System.arraycopy(loadedColors, 0, worldCustomColors, 0, Math.min(loadedColors.length, 8));
-                    }
-                });
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void loadWorldPalette() {
+        colorTable.setCustomColors(storage.loadPalette());
+        paletteDirty = false;
     }
 
+    // Sólo escribe si hubo cambios; la escritura va a la cola en segundo plano,
+    // que agrupa varios cambios seguidos en un único archivo.
     public void saveWorldPalette() {
-        Path path = getWorldConfigDir().resolve(PALETTE_FILE_NAME);
-        NbtCompound root = new NbtCompound();
-        root.putIntArray("Palette", worldCustomColors);
-        try {
-            NbtIo.writeCompressed(root, path);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        if (!paletteDirty || storage == null) return;
+        storage.savePalette(colorTable.getCustomColors());
+        paletteDirty = false;
     }
 
     // --- MIGRACIÓN Y LIMPIEZA (NIO) ---
 
     public boolean hasConfig(BlockPos pos, String dimensionId) {
-        Path path = getFileForPos(pos, dimensionId);
-        return path != null && Files.exists(path);
+        return pos != null && getStorage().contains(blockKey(dimensionId, pos));
     }
 
     public void moveConfig(BlockPos from, BlockPos to, String dimensionId) {
-        Path pathFrom = getFileForPos(from, dimensionId);
-        Path pathTo = getFileForPos(to, dimensionId);
-
-        if (pathFrom != null && Files.exists(pathFrom) && pathTo != null) {
-            try {
-                // Files.move es más robusto y permite reemplazar si existe (aunque aquí validamos antes)
-                Files.move(pathFrom, pathTo, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException e) {
-                System.err.println("[ChestSeparators] Error moviendo config: " + e.getMessage());
-            }
-        }
+        if (from == null || to == null) return;
+        histories.remove(blockKey(dimensionId, from));
+        getStorage().move(blockKey(dimensionId, from), blockKey(dimensionId, to));
     }
 
     public void truncateChestConfig(BlockPos pos, String dimensionId, int maxSlotIndex) {
-        Path path = getFileForPos(pos, dimensionId);
-        if (path == null || !Files.exists(path)) return;
-
-        try {
-            NbtCompound root = NbtIo.readCompressed(path, NbtSizeTracker.ofUnlimitedBytes());
-            boolean[] changed = {false};
-
-            root.getCompound("Separators").ifPresent(separatorsTag -> {
-                Set<String> keysToRemove = new HashSet<>();
-
-                for (String key : separatorsTag.getKeys()) {
-                    try {
-                        int slot = Integer.parseInt(key);
-                        if (slot > maxSlotIndex) {
-                            keysToRemove.add(key);
-                        }
-                    } catch (NumberFormatException ignored) {}
-                }
-
-                if (!keysToRemove.isEmpty()) {
-                    for (String key : keysToRemove) {
-                        separatorsTag.remove(key);
-                    }
-                    changed[0] = true;
-                }
-            });
-
-            if (changed[0]) {
-                NbtIo.writeCompressed(root, path);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        if (pos == null) return;
+        histories.remove(blockKey(dimensionId, pos));
+        getStorage().truncate(blockKey(dimensionId, pos), maxSlotIndex);
     }
 
-    // --- GESTIÓN DE RUTAS (NIO) ---
+    // --- SESIÓN DE MUNDO ---
 
-    private String getWorldFolderName() {
-        MinecraftClient client = MinecraftClient.getInstance();
-        String name = "unknown_world";
+    // Nombre de la carpeta del mundo, a partir del cliente: "sp_<nivel>" o "mp_<dirección>".
+    private static String getWorldName(MinecraftClient client) {
         if (client.isInSingleplayer() && client.getServer() != null) {
-            name = "sp_" + client.getServer().getSaveProperties().getLevelName();
+            return "sp_" + client.getServer().getSaveProperties().getLevelName();
         } else if (client.getCurrentServerEntry() != null) {
-            name = "mp_" + client.getCurrentServerEntry().address;
+            return "mp_" + client.getCurrentServerEntry().address;
         }
-        return name.replaceAll("[^a-zA-Z0-9_\\-]", "_");
+        return "unknown_world";
     }
 
-    private Path getWorldConfigDir() {
-        // Obtenemos el directorio de ejecución como Path
-        Path runDir = MinecraftClient.getInstance().runDirectory.toPath();
-        Path baseModDir = runDir.resolve("config/" + MOD_ID);
-        Path worldDir = baseModDir.resolve(getWorldFolderName());
+    // Único punto que consulta al cliente: carpeta de configuración + nombre del mundo.
+    private static StorageContext resolveClientContext() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        Path configRoot = client.runDirectory.toPath().resolve("config").resolve(MOD_ID);
+        return StorageContext.of(configRoot, getWorldName(client));
+    }
 
-        try {
-            if (!Files.exists(worldDir)) {
-                Files.createDirectories(worldDir);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Si no se ha recibido el evento de entrada (o ya se cerró la sesión) se abre bajo demanda.
+    private SeparatorStorage getStorage() {
+        if (storage == null) {
+            openSession(resolveClientContext());
         }
-        return worldDir;
+        return storage;
     }
 
-    private Path getSeparatorsDir() {
-        Path sepDir = getWorldConfigDir().resolve(FOLDER_NAME);
-        try {
-            if (!Files.exists(sepDir)) {
-                Files.createDirectories(sepDir);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Abre el backend en disco para un mundo. Lo pendiente del mundo anterior se escribe antes.
+    public void openSession(StorageContext context) {
+        FileSeparatorStorage fileStorage = new FileSeparatorStorage(context, writer, colorTable, GlobalChestConfig.getLayoutCacheCapacity());
+        if (GlobalChestConfig.isConvertToCompactFormat()) {
+            fileStorage.convertToCompactFormat();
         }
-        return sepDir;
+        openSession(fileStorage);
     }
 
-    private Path getFileForPos(BlockPos pos, String dimensionId) {
-        if (pos == null) return null;
-        Path dir = getSeparatorsDir();
-        String safeDim = dimensionId.replace(":", "_");
-        String fileName = String.format("%s_%d_%d_%d.dat", safeDim, pos.getX(), pos.getY(), pos.getZ());
-        return dir.resolve(fileName);
+    // Permite usar cualquier backend (p. ej. uno sobre un directorio temporal).
+    public void openSession(SeparatorStorage newStorage) {
+        closeSession();
+        storage = newStorage;
+        loadWorldPalette();
+        if (GlobalChestConfig.isCollectOrphans()) {
+            orphanCollector = new OrphanCollector(storage, GlobalChestConfig.getOrphanGraceSeconds() * 20L, this::forgetHistory);
+        }
+        if (GlobalChestConfig.getPrefetchRadius() > 0) {
+            prefetcher = new ProximityPrefetcher(storage, GlobalChestConfig.getPrefetchRadius(),
+                    GlobalChestConfig.getLayoutCacheCapacity() / 2);
+        }
     }
 
-    private Path getEnderChestFile() {
-        return getWorldConfigDir().resolve(ENDER_FILE_NAME);
+    private void closeSession() {
+        currentKey = null;
+        history = null;
+        histories.clear();
+        orphanCollector = null;
+        prefetcher = null;
+        if (storage != null) {
+            saveWorldPalette();
+            storage.close();
+            colorTable.setCustomColors(new int[ColorTable.CUSTOM_COUNT]);
+            storage = null;
+        } else {
+            writer.flush();
+        }
     }
 
-    private Path getFileForEntity(UUID uuid) {
-        if (uuid == null) return null;
-        Path dir = getSeparatorsDir();
-        return dir.resolve("entity_" + uuid.toString() + ".dat");
+    private ChestKey blockKey(String dimensionId, BlockPos pos) {
+        return ChestKey.block(getStorage().getContext().worldKey(), dimensionId, pos);
     }
 
     // --- LÓGICA DE COFRES ---
 
-    private int[] getSlotColors(int slotIndex) {
-        return currentChestConfig.computeIfAbsent(slotIndex, k -> new int[4]);
+    // Dimensiona el layout según los slots del contenedor abierto (no incluye el inventario del jugador).
+    // 'columns' es el ancho de su rejilla de slots, o 0 si los índices no siguen las filas de la pantalla.
+    public void prepareForSlots(int slotCount, int columns) {
+        gridColumns = columns;
+        currentChestConfig.reshape(columns);
+        currentChestConfig.ensureCapacity(slotCount);
+        if (history != null && history.getColumns() != currentChestConfig.getColumns()) history.reset(currentChestConfig.getColumns());
+    }
+
+    // Un layout guardado con otra rejilla se reparte sobre la del contenedor abierto. Se anota como
+    // instantánea: las ediciones que siguen en el diario son por slot y se aplican sobre esta rejilla.
+    private void fitToGrid() {
+        if (gridColumns <= 0 || currentChestConfig.getColumns() == gridColumns) return;
+        currentChestConfig.reshape(gridColumns);
+        if (!currentChestConfig.isEmpty() && currentKey != null && storage != null) {
+            storage.recordSnapshot(currentKey, currentChestConfig);
+        }
+    }
+
+    public ChestLayout getCurrentLayout() {
+        return currentChestConfig;
     }
 
+    public int getLineColorRef(int slotIndex, int actionFlag) {
+        switch (actionFlag) {
+            case ACTION_TOP: return currentChestConfig.getRef(slotIndex, ChestLayout.EDGE_TOP);
+            case ACTION_BOTTOM: return currentChestConfig.getRef(slotIndex, ChestLayout.EDGE_BOTTOM);
+            case ACTION_LEFT: return currentChestConfig.getRef(slotIndex, ChestLayout.EDGE_LEFT);
+            case ACTION_RIGHT: return currentChestConfig.getRef(slotIndex, ChestLayout.EDGE_RIGHT);
+            default: return ColorTable.NONE;
+        }
+    }
+
+    // Color ARGB opaco de la línea (0 si no hay)
     public int getLineColor(int slotIndex, int actionFlag) {
-        if (!currentChestConfig.containsKey(slotIndex)) return 0;
-        int[] colors = currentChestConfig.get(slotIndex);
-        if (actionFlag == ACTION_TOP) return colors[IDX_TOP];
-        if (actionFlag == ACTION_BOTTOM) return colors[IDX_BOTTOM];
-        if (actionFlag == ACTION_LEFT) return colors[IDX_LEFT];
-        if (actionFlag == ACTION_RIGHT) return colors[IDX_RIGHT];
-        return 0;
+        return colorTable.resolve(getLineColorRef(slotIndex, actionFlag));
     }
 
-    public void paintLine(int slotIndex, int actionFlags, int argbColor) {
-        int[] colors = getSlotColors(slotIndex);
-        if ((actionFlags & ACTION_TOP) != 0) colors[IDX_TOP] = argbColor;
-        if ((actionFlags & ACTION_BOTTOM) != 0) colors[IDX_BOTTOM] = argbColor;
-        if ((actionFlags & ACTION_LEFT) != 0) colors[IDX_LEFT] = argbColor;
-        if ((actionFlags & ACTION_RIGHT) != 0) colors[IDX_RIGHT] = argbColor;
+    public void paintLine(int slotIndex, int actionFlags, int colorRef) {
+        setEdges(slotIndex, actionFlags, colorRef);
     }
 
     public void removeLine(int slotIndex, int actionFlags) {
-        if (!currentChestConfig.containsKey(slotIndex)) return;
-        int[] colors = currentChestConfig.get(slotIndex);
-        if ((actionFlags & ACTION_TOP) != 0) colors[IDX_TOP] = 0;
-        if ((actionFlags & ACTION_BOTTOM) != 0) colors[IDX_BOTTOM] = 0;
-        if ((actionFlags & ACTION_LEFT) != 0) colors[IDX_LEFT] = 0;
-        if ((actionFlags & ACTION_RIGHT) != 0) colors[IDX_RIGHT] = 0;
-        if (colors[0] == 0 && colors[1] == 0 && colors[2] == 0 && colors[3] == 0) {
-            currentChestConfig.remove(slotIndex);
+        setEdges(slotIndex, actionFlags, ColorTable.NONE);
+    }
+
+    private void setEdges(int slotIndex, int actionFlags, int colorRef) {
+        long version = currentChestConfig.getVersion();
+        boolean wasEmpty = currentChestConfig.isEmpty();
+        if ((actionFlags & ACTION_TOP) != 0) setEdge(slotIndex, ChestLayout.EDGE_TOP, colorRef);
+        if ((actionFlags & ACTION_BOTTOM) != 0) setEdge(slotIndex, ChestLayout.EDGE_BOTTOM, colorRef);
+        if ((actionFlags & ACTION_LEFT) != 0) setEdge(slotIndex, ChestLayout.EDGE_LEFT, colorRef);
+        if ((actionFlags & ACTION_RIGHT) != 0) setEdge(slotIndex, ChestLayout.EDGE_RIGHT, colorRef);
+        // Los flags ACTION_* coinciden con la máscara 1 << EDGE_* del diario
+        if (currentChestConfig.getVersion() != version && currentKey != null && storage != null) {
+            // La primera línea de un contenedor vacío va como instantánea: así el diario conoce su rejilla
+            if (wasEmpty) storage.recordSnapshot(currentKey, currentChestConfig);
+            else storage.recordEdges(currentKey, slotIndex, actionFlags, colorRef);
+        }
+    }
+
+    // Herramientas de área (contorno, rejilla, sección): todo el cambio es una sola edición. Va al diario como
+    // una única instantánea, que se reaplica entera o nada, y al historial como un solo paso; quien llama guarda
+    // una vez. Devuelve si ha cambiado algo.
+    public boolean applyEdges(int[] slotIndices, int[] actionFlags, int count, int colorRef) {
+        long version = currentChestConfig.getVersion();
+        for (int i = 0; i < count; i++) {
+            int slotIndex = slotIndices[i];
+            int flags = actionFlags[i];
+            if ((flags & ACTION_TOP) != 0) setEdge(slotIndex, ChestLayout.EDGE_TOP, colorRef);
+            if ((flags & ACTION_BOTTOM) != 0) setEdge(slotIndex, ChestLayout.EDGE_BOTTOM, colorRef);
+            if ((flags & ACTION_LEFT) != 0) setEdge(slotIndex, ChestLayout.EDGE_LEFT, colorRef);
+            if ((flags & ACTION_RIGHT) != 0) setEdge(slotIndex, ChestLayout.EDGE_RIGHT, colorRef);
+        }
+        if (currentChestConfig.getVersion() == version) return false;
+        if (currentKey != null && storage != null) storage.recordSnapshot(currentKey, currentChestConfig);
+        return true;
+    }
+
+    private void setEdge(int slotIndex, int edge, int colorRef) {
+        if (slotIndex < 0) return;
+        if (history != null) {
+            // El borde se lee antes de ampliar el layout: fuera de rango es NONE igualmente
+            history.record(currentChestConfig.borderId(slotIndex, edge), currentChestConfig.getRef(slotIndex, edge), colorRef);
+        }
+        currentChestConfig.setRef(slotIndex, edge, colorRef);
+    }
+
+    // --- DESHACER / REHACER ---
+
+    // Cada paso va al diario como la edición que revierte (registros por borde, o una instantánea si el
+    // contenedor estaba vacío) y quien llama lo guarda por la vía agrupada de siempre. Devuelve false si no
+    // había nada que deshacer o el historial ya no coincidía con el layout.
+    public boolean undo() {
+        if (history == null || !history.canUndo()) return false;
+        boolean wasEmpty = beginHistoryStep();
+        boolean undone = history.undo(currentChestConfig, historyWriter);
+        endHistoryStep(wasEmpty);
+        return undone;
+    }
+
+    public boolean redo() {
+        if (history == null || !history.canRedo()) return false;
+        boolean wasEmpty = beginHistoryStep();
+        boolean redone = history.redo(currentChestConfig, historyWriter);
+        endHistoryStep(wasEmpty);
+        return redone;
+    }
+
+    public boolean canUndo() {
+        return history != null && history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history != null && history.canRedo();
+    }
+
+    private boolean beginHistoryStep() {
+        boolean wasEmpty = currentChestConfig.isEmpty();
+        journalHistoryEdges = !wasEmpty && currentKey != null && storage != null;
+        return wasEmpty;
+    }
+
+    private void endHistoryStep(boolean wasEmpty) {
+        journalHistoryEdges = false;
+        // Igual que en setEdges: sobre un contenedor vacío el diario recibe una instantánea con su rejilla
+        if (wasEmpty && !currentChestConfig.isEmpty() && currentKey != null && storage != null) {
+            storage.recordSnapshot(currentKey, currentChestConfig);
+        }
+    }
+
+    private void writeHistoryBorder(int borderId, int ref) {
+        currentChestConfig.setBorderRef(borderId, ref);
+        if (journalHistoryEdges) {
+            int slot = currentChestConfig.slotOfBorder(borderId);
+            storage.recordEdges(currentKey, slot, 1 << currentChestConfig.edgeOfBorder(borderId), ref);
         }
     }
 
+    // Historial del contenedor recién cargado; uno grabado en otra rejilla ya no sirve
+    private void attachHistory() {
+        if (currentKey == null) {
+            history = null;
+            return;
+        }
+        int columns = currentChestConfig.getColumns();
+        history = histories.computeIfAbsent(currentKey, key -> new EditHistory(columns));
+        if (history.getColumns() != columns) history.reset(columns);
+        history.commit();
+    }
+
+    // Layout borrado por el recolector: un contenedor puesto después en su sitio no hereda el historial
+    private void forgetHistory(ChestKey key) {
+        histories.remove(key);
+        if (key.equals(currentKey)) clearCurrentConfig();
+    }
+
+    // Cierra la transacción en curso: lo que se guarde a continuación se deshace por separado.
+    private void commitHistory() {
+        if (history != null) history.commit();
+    }
+
     public void copyToClipboard() {
-        this.clipboardConfig = new HashMap<>();
-        for (Map.Entry<Integer, int[]> entry : this.currentChestConfig.entrySet()) {
-            this.clipboardConfig.put(entry.getKey(), entry.getValue().clone());
+        if (this.clipboardConfig == null) {
+            this.clipboardConfig = currentChestConfig.copy();
+        } else {
+            this.clipboardConfig.copyFrom(currentChestConfig);
         }
     }
 
     public void pasteFromClipboard() {
         if (this.clipboardConfig != null && !this.clipboardConfig.isEmpty()) {
-            this.currentChestConfig.clear();
-            for (Map.Entry<Integer, int[]> entry : this.clipboardConfig.entrySet()) {
-                this.currentChestConfig.put(entry.getKey(), entry.getValue().clone());
+            pasteScratch.copyFrom(this.clipboardConfig);
+            // Copiado de un contenedor con otra rejilla (un cofre pegado en un dispensador)
+            if (gridColumns > 0) pasteScratch.reshape(gridColumns);
+            if (history != null) {
+                // Se anota sólo lo que cambia; pegar sobre otra rejilla sin rejilla abierta no se puede deshacer
+                if (pasteScratch.getColumns() == history.getColumns()) history.recordDiff(currentChestConfig, pasteScratch);
+                else history.reset(pasteScratch.getColumns());
             }
+            this.currentChestConfig.copyFrom(pasteScratch);
+            if (currentKey != null && storage != null) storage.recordSnapshot(currentKey, currentChestConfig);
         }
     }
 
@@ -269,111 +391,159 @@ public class ChestConfigManager {
 
     // --- OPERACIONES PÚBLICAS IO ---
 
+    // Se llama en cada bloque roto: sin datos en el índice no se toca el disco.
     public void clearChest(BlockPos pos, String dimensionId) {
-        currentChestConfig.clear();
-        Path path = getFileForPos(pos, dimensionId);
-        if (path != null) {
-            try {
-                Files.deleteIfExists(path);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (pos == null) {
+            currentChestConfig.clear();
+            return;
         }
+        SeparatorStorage current = getStorage();
+        ChestKey key = blockKey(dimensionId, pos);
+        clearLayout(key);
+        if (!current.contains(key)) return;
+        current.delete(key);
     }
 
     public void clearEnderChest() {
-        currentChestConfig.clear();
-        try {
-            Files.deleteIfExists(getEnderChestFile());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        SeparatorStorage current = getStorage();
+        ChestKey key = ChestKey.ender(current.getContext().worldKey());
+        clearLayout(key);
+        current.delete(key);
     }
 
     public void clearEntityChest(UUID uuid) {
-        currentChestConfig.clear();
-        Path path = getFileForEntity(uuid);
-        if (path != null) {
-            try {
-                Files.deleteIfExists(path);
-            } catch (IOException e) {
-                e.printStackTrace();
+        if (uuid == null) {
+            currentChestConfig.clear();
+            return;
+        }
+        SeparatorStorage current = getStorage();
+        ChestKey key = ChestKey.entity(current.getContext().worldKey(), uuid);
+        clearLayout(key);
+        current.delete(key);
+    }
+
+    // Vaciar el contenedor abierto (papelera del editor) se puede deshacer; uno que desaparece pierde su historial.
+    private void clearLayout(ChestKey key) {
+        if (history != null && key.equals(currentKey)) {
+            history.commit();
+            for (int slot = currentChestConfig.nextOccupied(0); slot != -1; slot = currentChestConfig.nextOccupied(slot + 1)) {
+                for (int edge = 0; edge < ChestLayout.EDGES_PER_SLOT; edge++) {
+                    int id = currentChestConfig.borderId(slot, edge);
+                    // Un borde compartido se apaga con el primer slot que lo encuentra
+                    history.record(id, currentChestConfig.getBorderRef(id), ColorTable.NONE);
+                    currentChestConfig.setBorderRef(id, ColorTable.NONE);
+                }
             }
+            history.commit();
+        } else {
+            histories.remove(key);
         }
+        currentChestConfig.clear();
+    }
+
+    // Contadores de la sesión actual (null fuera de un mundo).
+    public StorageMetrics getStorageMetrics() {
+        return storage != null ? storage.getMetrics() : null;
+    }
+
+    // --- ESCRITURA EN SEGUNDO PLANO ---
+
+    public int getPendingWriteCount() {
+        return writer.getPendingWriteCount();
+    }
+
+    // Bloquea hasta que todo lo pendiente (incluido lo que sólo está en el diario) está en disco.
+    public void flushPendingWrites() {
+        if (storage != null) storage.flush();
+        else writer.flush();
+    }
+
+    // Al cerrar una pantalla: compacta el diario y adelanta las escrituras sin bloquear el hilo de render.
+    public void flushPendingWritesAsync() {
+        if (storage != null) storage.flushAsync();
+        else writer.flushAsync();
+    }
+
+    // --- CICLO DE VIDA DEL MUNDO ---
+
+    // Al entrar en un mundo se resuelve su carpeta, se abre su almacén y se cargan el índice de posiciones
+    // y la paleta, así la primera interacción ya no paga ese coste.
+    public void onWorldJoin() {
+        openSession(resolveClientContext());
+    }
+
+    // Al salir se vacía la cola de escritura y se persiste el índice junto a las regiones ya escritas.
+    public void onWorldLeave() {
+        closeSession();
+    }
+
+    // --- MANTENIMIENTO EN SEGUNDO PLANO ---
+
+    // Fin de cada tick del mundo: precarga lo que rodea al jugador y revisa unas pocas posiciones guardadas
+    // dentro de un presupuesto de tiempo.
+    public void onWorldTick(ClientWorld world, PlayerEntity player) {
+        if (storage == null) return;
+        if (prefetcher != null) prefetcher.tick(world, player);
+        if (orphanCollector != null) orphanCollector.tick(world, player);
+    }
+
+    public void onChunkLoad(ClientWorld world, int chunkX, int chunkZ, PlayerEntity player) {
+        if (prefetcher != null && storage != null) prefetcher.onChunkLoad(world, chunkX, chunkZ, player);
+    }
+
+    public void onEntityLoad(Entity entity) {
+        if (orphanCollector != null) orphanCollector.onEntityLoad(entity);
+    }
+
+    public void onEntityUnload(Entity entity, Entity player) {
+        if (orphanCollector != null) orphanCollector.onEntityUnload(entity, player);
     }
 
     public void loadConfig(BlockPos pos, String dimensionId) {
         clearCurrentConfig();
-        loadFromFile(getFileForPos(pos, dimensionId));
+        if (pos == null) return;
+        currentKey = blockKey(dimensionId, pos);
+        getStorage().load(currentKey, currentChestConfig);
+        fitToGrid();
+        attachHistory();
     }
 
     public void loadEnderConfig() {
         clearCurrentConfig();
-        loadFromFile(getEnderChestFile());
+        SeparatorStorage current = getStorage();
+        currentKey = ChestKey.ender(current.getContext().worldKey());
+        current.load(currentKey, currentChestConfig);
+        fitToGrid();
+        attachHistory();
     }
 
     public void loadEntityConfig(UUID uuid) {
         clearCurrentConfig();
-        loadFromFile(getFileForEntity(uuid));
+        if (uuid == null) return;
+        SeparatorStorage current = getStorage();
+        currentKey = ChestKey.entity(current.getContext().worldKey(), uuid);
+        current.load(currentKey, currentChestConfig);
+        fitToGrid();
+        attachHistory();
     }
 
     public void saveConfig(BlockPos pos, String dimensionId) {
-        saveToFile(getFileForPos(pos, dimensionId));
+        if (pos == null) return;
+        SeparatorStorage current = getStorage();
+        current.save(blockKey(dimensionId, pos), currentChestConfig);
+        commitHistory();
     }
 
     public void saveEnderConfig() {
-        saveToFile(getEnderChestFile());
+        SeparatorStorage current = getStorage();
+        current.save(ChestKey.ender(current.getContext().worldKey()), currentChestConfig);
+        commitHistory();
     }
 
     public void saveEntityConfig(UUID uuid) {
-        saveToFile(getFileForEntity(uuid));
-    }
-
-    private void loadFromFile(Path path) {
-        if (path == null || !Files.exists(path)) return;
-        try {
-            NbtCompound root = NbtIo.readCompressed(path, NbtSizeTracker.ofUnlimitedBytes());
-            if (root.contains("Separators")) {
-                root.getCompound("Separators").ifPresent(separatorsTag -> {
-                    for (String key : separatorsTag.getKeys()) {
-                        try {
-                            int slot = Integer.parseInt(key);
-                            separatorsTag.getIntArray(key).ifPresent(data -> {
-                                if (data.length == 4) {
-                                    currentChestConfig.put(slot, data);
-                                }
-                            });
-                        } catch (NumberFormatException ignored) {}
-                    }
-                });
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private void saveToFile(Path path) {
-        if (path == null) return;
-        if (currentChestConfig.isEmpty()) {
-            try {
-                Files.deleteIfExists(path);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return;
-        }
-        NbtCompound root = new NbtCompound();
-        NbtCompound separatorsTag = new NbtCompound();
-
-        for (Map.Entry<Integer, int[]> entry : currentChestConfig.entrySet()) {
-            separatorsTag.putIntArray(String.valueOf(entry.getKey()), entry.getValue());
-        }
-
-        root.put("Separators", separatorsTag);
-        try {
-            NbtIo.writeCompressed(root, path);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        if (uuid == null) return;
+        SeparatorStorage current = getStorage();
+        current.save(ChestKey.entity(current.getContext().worldKey(), uuid), currentChestConfig);
+        commitHistory();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,25 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.UUID;
+
+// Identity of one stored layout: a block container (dimension + packed BlockPos),
+// a mobile inventory (entity UUID) or the per-world ender chest.
+@Environment(EnvType.CLIENT)
+public record ChestKey(String world, String dimension, long pos, UUID entity, boolean ender) {
+
+    public static ChestKey block(String world, String dimension, BlockPos pos) {
+        return new ChestKey(world, dimension, pos.asLong(), null, false);
+    }
+
+    public static ChestKey entity(String world, UUID uuid) {
+        return new ChestKey(world, null, 0L, uuid, false);
+    }
+
+    public static ChestKey ender(String world) {
+        return new ChestKey(world, null, 0L, null, true);
+    }
+}
@@ -0,0 +1,363 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.Arrays;
+
+// Flat, primitive model of the separator lines of one container.
+// Lines live on the borders of a grid of 'columns' slots per row (slot = row * columns + column), stored once
+// per physical border: a horizontal edge array with columns entries per grid line (rows + 1 lines) and a
+// vertical one with columns + 1 entries per row. The bottom edge of a slot and the top edge of the slot below
+// are therefore the same entry, and so are a right edge and the next slot's left edge; every entry is a colour
+// reference (see ColorTable). A bitset records which slots have at least one painted edge. Reads on the render
+// path are a plain array access: no boxing, no hashing, and copying a whole layout is a few array copies.
+@Environment(EnvType.CLIENT)
+public final class ChestLayout {
+
+    public static final int EDGE_TOP = 0;
+    public static final int EDGE_BOTTOM = 1;
+    public static final int EDGE_LEFT = 2;
+    public static final int EDGE_RIGHT = 3;
+    public static final int EDGES_PER_SLOT = 4;
+
+    // Ancho de los cofres, barriles y ender chest: todos los layouts guardados por slot antes de la rejilla
+    public static final int DEFAULT_COLUMNS = 9;
+
+    private int columns = DEFAULT_COLUMNS;
+    private int rows;
+    private int slotCapacity;
+    // (rows + 1) * columns bordes horizontales y rows * (columns + 1) verticales, fila a fila
+    private short[] horizontal;
+    private short[] vertical;
+    private long[] occupied;
+    private int occupiedCount;
+    // Incremented on every content change; lets derived data (render geometry) detect stale state.
+    private long version;
+
+    public ChestLayout(int slotCapacity) {
+        this.slotCapacity = Math.max(0, slotCapacity);
+        this.rows = rowsFor(this.slotCapacity, columns);
+        this.horizontal = new short[(rows + 1) * columns];
+        this.vertical = new short[rows * (columns + 1)];
+        this.occupied = new long[wordsFor(this.slotCapacity)];
+    }
+
+    private static int wordsFor(int slots) {
+        return (slots + 63) >>> 6;
+    }
+
+    private static int rowsFor(int slots, int columns) {
+        return (slots + columns - 1) / columns;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSlotCapacity() {
+        return slotCapacity;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    // Grows the arrays so that slots [0, slotCount) are addressable. Never shrinks.
+    public void ensureCapacity(int slotCount) {
+        if (slotCount <= slotCapacity) return;
+        int newRows = rowsFor(slotCount, columns);
+        if (newRows > rows) {
+            // Fila a fila: las filas nuevas van al final de ambos arrays
+            horizontal = Arrays.copyOf(horizontal, (newRows + 1) * columns);
+            vertical = Arrays.copyOf(vertical, newRows * (columns + 1));
+            rows = newRows;
+        }
+        occupied = Arrays.copyOf(occupied, wordsFor(slotCount));
+        int oldCapacity = slotCapacity;
+        slotCapacity = slotCount;
+        // Un slot nuevo puede nacer pintado: su borde superior o izquierdo ya era de un vecino
+        for (int slot = oldCapacity; slot < slotCount; slot++) {
+            updateOccupancy(slot / columns, slot % columns);
+        }
+    }
+
+    // --- BORDES POR SLOT ---
+
+    public int getRef(int slot, int edge) {
+        if (slot < 0 || slot >= slotCapacity) return ColorTable.NONE;
+        return edge <= EDGE_BOTTOM ? horizontal[horizontalIndex(slot, edge)] : vertical[verticalIndex(slot, edge)];
+    }
+
+    // Also paints the neighbour that shares the edge (the slot below for EDGE_BOTTOM, and so on).
+    public void setRef(int slot, int edge, int ref) {
+        if (slot < 0 || ref < ColorTable.NONE || ref > ColorTable.MAX_REF) return;
+        if (slot >= slotCapacity) {
+            if (ref == ColorTable.NONE) return;
+            ensureCapacity(slot + 1);
+        }
+        if (edge <= EDGE_BOTTOM) {
+            int index = horizontalIndex(slot, edge);
+            if (horizontal[index] == ref) return;
+            horizontal[index] = (short) ref;
+            int row = index / columns;
+            int column = index % columns;
+            updateOccupancy(row - 1, column);
+            updateOccupancy(row, column);
+        } else {
+            int index = verticalIndex(slot, edge);
+            if (vertical[index] == ref) return;
+            vertical[index] = (short) ref;
+            int row = index / (columns + 1);
+            int column = index % (columns + 1);
+            updateOccupancy(row, column - 1);
+            updateOccupancy(row, column);
+        }
+        version++;
+    }
+
+    // Migration from per-slot data (old formats, old journal records): an empty edge never clears a border
+    // that the neighbour sharing it has painted.
+    public void importRef(int slot, int edge, int ref) {
+        if (ref != ColorTable.NONE) setRef(slot, edge, ref);
+    }
+
+    private int horizontalIndex(int slot, int edge) {
+        int row = slot / columns + (edge == EDGE_BOTTOM ? 1 : 0);
+        return row * columns + slot % columns;
+    }
+
+    private int verticalIndex(int slot, int edge) {
+        int column = slot % columns + (edge == EDGE_RIGHT ? 1 : 0);
+        return (slot / columns) * (columns + 1) + column;
+    }
+
+    // --- BORDES CANÓNICOS ---
+
+    // Horizontal border above grid row 'row' (0 .. rows), or below the last row when row == rows.
+    public int getHorizontalRef(int row, int column) {
+        return horizontal[row * columns + column];
+    }
+
+    // Vertical border left of grid column 'column' (0 .. columns), or right of the last column.
+    public int getVerticalRef(int row, int column) {
+        return vertical[row * (columns + 1) + column];
+    }
+
+    public void setHorizontalRef(int row, int column, int ref) {
+        if (row < 0 || column < 0 || column >= columns || ref < ColorTable.NONE || ref > ColorTable.MAX_REF) return;
+        if (row > rows) {
+            if (ref == ColorTable.NONE) return;
+            ensureCapacity(row * columns);
+        }
+        int index = row * columns + column;
+        if (horizontal[index] == ref) return;
+        horizontal[index] = (short) ref;
+        updateOccupancy(row - 1, column);
+        updateOccupancy(row, column);
+        version++;
+    }
+
+    public void setVerticalRef(int row, int column, int ref) {
+        if (row < 0 || column < 0 || column > columns || ref < ColorTable.NONE || ref > ColorTable.MAX_REF) return;
+        if (row >= rows) {
+            if (ref == ColorTable.NONE) return;
+            ensureCapacity((row + 1) * columns);
+        }
+        int index = row * (columns + 1) + column;
+        if (vertical[index] == ref) return;
+        vertical[index] = (short) ref;
+        updateOccupancy(row, column - 1);
+        updateOccupancy(row, column);
+        version++;
+    }
+
+    // --- IDS DE BORDE ---
+    // A border as one int: (row << 16) | (column << 1) | vertical. It stays valid while the layout grows
+    // (ensureCapacity) but not across a reshape, which moves every border.
+
+    public static int horizontalBorderId(int row, int column) {
+        return (row << 16) | (column << 1);
+    }
+
+    public static int verticalBorderId(int row, int column) {
+        return (row << 16) | (column << 1) | 1;
+    }
+
+    public int borderId(int slot, int edge) {
+        int row = slot / columns;
+        int column = slot % columns;
+        switch (edge) {
+            case EDGE_TOP: return horizontalBorderId(row, column);
+            case EDGE_BOTTOM: return horizontalBorderId(row + 1, column);
+            case EDGE_LEFT: return verticalBorderId(row, column);
+            default: return verticalBorderId(row, column + 1);
+        }
+    }
+
+    public int getBorderRef(int borderId) {
+        int row = borderId >>> 16;
+        int column = (borderId & 0xFFFF) >>> 1;
+        if ((borderId & 1) == 0) {
+            return row <= rows && column < columns ? horizontal[row * columns + column] : ColorTable.NONE;
+        }
+        return row < rows && column <= columns ? vertical[row * (columns + 1) + column] : ColorTable.NONE;
+    }
+
+    public void setBorderRef(int borderId, int ref) {
+        int row = borderId >>> 16;
+        int column = (borderId & 0xFFFF) >>> 1;
+        if ((borderId & 1) == 0) setHorizontalRef(row, column, ref);
+        else setVerticalRef(row, column, ref);
+    }
+
+    // Slot and edge (EDGE_*) through which a border is addressed per slot: the slot below or right of it when
+    // that slot exists, otherwise the one above or left. Lets per-slot consumers (the journal) replay it.
+    public int slotOfBorder(int borderId) {
+        int row = borderId >>> 16;
+        int column = (borderId & 0xFFFF) >>> 1;
+        int slot = row * columns + column;
+        if ((borderId & 1) == 0) return row < rows && slot < slotCapacity ? slot : slot - columns;
+        return column < columns && slot < slotCapacity ? slot : slot - 1;
+    }
+
+    public int edgeOfBorder(int borderId) {
+        int row = borderId >>> 16;
+        int column = (borderId & 0xFFFF) >>> 1;
+        int slot = row * columns + column;
+        if ((borderId & 1) == 0) return row < rows && slot < slotCapacity ? EDGE_TOP : EDGE_BOTTOM;
+        return column < columns && slot < slotCapacity ? EDGE_LEFT : EDGE_RIGHT;
+    }
+
+    // Re-lays the layout on a grid of another width (a container whose slots are laid out differently from
+    // the one it was saved with). Every slot keeps its four edges; where two of them become the same border,
+    // a painted one wins over an empty one.
+    public void reshape(int newColumns) {
+        if (newColumns <= 0 || newColumns == columns) return;
+        ChestLayout old = copy();
+        int capacity = slotCapacity;
+        columns = newColumns;
+        rows = rowsFor(capacity, columns);
+        horizontal = new short[(rows + 1) * columns];
+        vertical = new short[rows * (columns + 1)];
+        Arrays.fill(occupied, 0L);
+        occupiedCount = 0;
+        for (int slot = old.nextOccupied(0); slot != -1; slot = old.nextOccupied(slot + 1)) {
+            for (int edge = 0; edge < EDGES_PER_SLOT; edge++) {
+                importRef(slot, edge, old.getRef(slot, edge));
+            }
+        }
+        version++;
+    }
+
+    // --- OCUPACIÓN ---
+
+    public boolean isOccupied(int slot) {
+        return slot >= 0 && slot < slotCapacity && (occupied[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return occupiedCount == 0;
+    }
+
+    public int getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    // Iteration over painted slots: returns the first occupied slot >= fromSlot, or -1.
+    public int nextOccupied(int fromSlot) {
+        if (fromSlot < 0) fromSlot = 0;
+        if (fromSlot >= slotCapacity) return -1;
+        int word = fromSlot >>> 6;
+        long bits = occupied[word] & (-1L << fromSlot);
+        while (true) {
+            if (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return slot < slotCapacity ? slot : -1;
+            }
+            if (++word >= occupied.length) return -1;
+            bits = occupied[word];
+        }
+    }
+
+    // Drops the lines of slots above maxSlotIndex (double chest turned into a single one). Borders shared with
+    // a slot that stays (the bottom line of the last kept row) are kept.
+    public void truncate(int maxSlotIndex) {
+        for (int slot = nextOccupied(maxSlotIndex + 1); slot != -1; slot = nextOccupied(slot + 1)) {
+            int column = slot % columns;
+            if (slot - columns > maxSlotIndex) setRef(slot, EDGE_TOP, ColorTable.NONE);
+            if (column == 0 || slot - 1 > maxSlotIndex) setRef(slot, EDGE_LEFT, ColorTable.NONE);
+            setRef(slot, EDGE_BOTTOM, ColorTable.NONE);
+            setRef(slot, EDGE_RIGHT, ColorTable.NONE);
+        }
+    }
+
+    public void clear() {
+        if (occupiedCount == 0) return;
+        Arrays.fill(horizontal, (short) 0);
+        Arrays.fill(vertical, (short) 0);
+        Arrays.fill(occupied, 0L);
+        occupiedCount = 0;
+        version++;
+    }
+
+    public void copyFrom(ChestLayout other) {
+        if (other.columns != columns) {
+            // Otra rejilla: se adopta la del origen con la capacidad de los dos
+            int capacity = Math.max(slotCapacity, other.slotCapacity);
+            columns = other.columns;
+            rows = rowsFor(capacity, columns);
+            horizontal = new short[(rows + 1) * columns];
+            vertical = new short[rows * (columns + 1)];
+            occupied = new long[wordsFor(capacity)];
+            slotCapacity = capacity;
+        } else if (other.slotCapacity > slotCapacity) {
+            ensureCapacity(other.slotCapacity);
+        }
+        copyInto(other.horizontal, horizontal);
+        copyInto(other.vertical, vertical);
+        copyInto(other.occupied, occupied);
+        occupiedCount = other.occupiedCount;
+        version++;
+    }
+
+    private static void copyInto(short[] from, short[] to) {
+        System.arraycopy(from, 0, to, 0, from.length);
+        Arrays.fill(to, from.length, to.length, (short) 0);
+    }
+
+    private static void copyInto(long[] from, long[] to) {
+        System.arraycopy(from, 0, to, 0, from.length);
+        Arrays.fill(to, from.length, to.length, 0L);
+    }
+
+    public ChestLayout copy() {
+        ChestLayout copy = new ChestLayout(0);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    // Recomputes the painted bit of the slot at a grid cell; cells outside the slot range are ignored.
+    private void updateOccupancy(int row, int column) {
+        if (row < 0 || column < 0 || column >= columns) return;
+        int slot = row * columns + column;
+        if (slot >= slotCapacity) return;
+        int h = row * columns + column;
+        int v = row * (columns + 1) + column;
+        boolean painted = horizontal[h] != 0 || horizontal[h + columns] != 0 || vertical[v] != 0 || vertical[v + 1] != 0;
+        long mask = 1L << slot;
+        boolean wasPainted = (occupied[slot >>> 6] & mask) != 0;
+        if (painted == wasPainted) return;
+        if (painted) {
+            occupied[slot >>> 6] |= mask;
+            occupiedCount++;
+        } else {
+            occupied[slot >>> 6] &= ~mask;
+            occupiedCount--;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Colour references used by ChestLayout instead of full ARGB values.
+//   0            no line
+//   1 .. 16      the 16 standard dye colours
+//   17 .. 24     the world's 8 custom colours, linked: editing the custom colour recolours every edge that uses it
+//   25 ..        escape: any other colour, interned for the lifetime of the client
+// Stored layouts only persist refs below FIRST_ESCAPE as they are; escaped colours are written as literals
+// (see LayoutCodec), so escape numbers never leave the running client.
+@Environment(EnvType.CLIENT)
+public final class ColorTable {
+
+    public static final int NONE = 0;
+    public static final int FIRST_STANDARD = 1;
+    public static final int STANDARD_COUNT = 16;
+    public static final int FIRST_CUSTOM = FIRST_STANDARD + STANDARD_COUNT;
+    public static final int CUSTOM_COUNT = 8;
+    public static final int FIRST_ESCAPE = FIRST_CUSTOM + CUSTOM_COUNT;
+    // Refs are kept in a short per edge.
+    public static final int MAX_REF = Short.MAX_VALUE;
+
+    public static final int[] STANDARD_COLORS = {
+            0xFF993333, 0xFFD87F33, 0xFFE5E533, 0xFF7FCC19,
+            0xFF667F33, 0xFF4C7F99, 0xFF6699D8, 0xFF334CB2,
+            0xFF7F3FB2, 0xFFB24CD8, 0xFFF27FA5, 0xFF664C33,
+            0xFFFFFFFF, 0xFF999999, 0xFF4C4C4C, 0xFF191919
+    };
+
+    // Custom colours are RGB without alpha, as edited in the colour picker.
+    private int[] customColors = new int[CUSTOM_COUNT];
+    private int[] escapes = new int[16];
+    private int escapeCount = 0;
+    private final Map<Integer, Integer> escapeRefs = new HashMap<>();
+    // Incremented whenever an existing ref starts resolving to another colour (custom colour edit).
+    private long version;
+
+    public static int standardRef(int index) {
+        return FIRST_STANDARD + index;
+    }
+
+    public static int customRef(int index) {
+        return FIRST_CUSTOM + index;
+    }
+
+    public static boolean isEscape(int ref) {
+        return ref >= FIRST_ESCAPE;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Opaque ARGB for a ref, 0 for NONE or an unknown ref.
+    public int resolve(int ref) {
+        if (ref <= NONE) return 0;
+        if (ref < FIRST_CUSTOM) return STANDARD_COLORS[ref - FIRST_STANDARD];
+        if (ref < FIRST_ESCAPE) return customColors[ref - FIRST_CUSTOM] | 0xFF000000;
+        int escape = ref - FIRST_ESCAPE;
+        return escape < escapeCount ? escapes[escape] : 0;
+    }
+
+    // Unlinked ref for a literal colour: a standard colour when it matches one, an escape otherwise.
+    public int refForColor(int color) {
+        if (color == 0) return NONE;
+        int argb = color | 0xFF000000;
+        for (int i = 0; i < STANDARD_COUNT; i++) {
+            if (STANDARD_COLORS[i] == argb) return standardRef(i);
+        }
+        Integer known = escapeRefs.get(argb);
+        if (known != null) return known;
+        if (FIRST_ESCAPE + escapeCount > MAX_REF) {
+            // Tabla llena (decenas de miles de colores distintos): se usa el estándar más cercano
+            return nearestStandardRef(argb);
+        }
+        if (escapeCount == escapes.length) {
+            escapes = Arrays.copyOf(escapes, escapeCount * 2);
+        }
+        escapes[escapeCount] = argb;
+        int ref = FIRST_ESCAPE + escapeCount++;
+        escapeRefs.put(argb, ref);
+        return ref;
+    }
+
+    public int[] getCustomColors() {
+        return customColors;
+    }
+
+    public boolean setCustomColor(int index, int color) {
+        if (index < 0 || index >= CUSTOM_COUNT || customColors[index] == color) return false;
+        customColors[index] = color;
+        version++;
+        return true;
+    }
+
+    // Replaces the custom colours when a world is opened or left.
+    public void setCustomColors(int[] colors) {
+        customColors = Arrays.copyOf(colors, CUSTOM_COUNT);
+        version++;
+    }
+
+    private static int nearestStandardRef(int argb) {
+        int best = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < STANDARD_COUNT; i++) {
+            int c = STANDARD_COLORS[i];
+            long dr = ((c >> 16) & 0xFF) - ((argb >> 16) & 0xFF);
+            long dg = ((c >> 8) & 0xFF) - ((argb >> 8) & 0xFF);
+            long db = (c & 0xFF) - (argb & 0xFF);
+            long distance = dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return standardRef(best);
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+// Undo/redo history of one container as border deltas in a fixed ring of longs, never as layout copies.
+// Every entry is one border that changed (its ChestLayout border id, old ref and new ref); the first entry of
+// each transaction (everything between two commits: a drag, a paste, a clear) carries a start bit, so undo
+// and redo walk exactly the entries of one step. When the ring is full the oldest transactions are dropped
+// whole; a single transaction bigger than the ring is not kept at all.
+@Environment(EnvType.CLIENT)
+public final class EditHistory {
+
+    // 4096 bordes (32 KB): un pegado completo en el contenedor más grande cabe en una transacción
+    public static final int CAPACITY = 1 << 12;
+    private static final int MASK = CAPACITY - 1;
+
+    // Entrada: bit 63 = inicio de transacción, bits 32..62 = id de borde, 16..31 = ref anterior, 0..15 = ref nueva
+    private static final long START = 1L << 63;
+
+    // Applies one border change of an undo/redo step; the manager journals it on the way.
+    public interface BorderWriter {
+        void write(int borderId, int ref);
+    }
+
+    // Se reserva con la primera edición: abrir un cofre sin tocarlo no cuesta nada
+    private long[] entries;
+    // Contadores absolutos (se enmascaran al indexar): [start, cursor) se puede deshacer, [cursor, end) rehacer
+    private int start;
+    private int cursor;
+    private int end;
+    // Posición del inicio de la transacción en curso, si ya tiene entradas
+    private int transactionStart = -1;
+    private boolean discarding = false;
+    // Ancho de la rejilla en la que se grabaron los ids de borde
+    private int columns;
+    // Bordes ya comprobados del paso que se valida
+    private final IntOpenHashSet checked = new IntOpenHashSet();
+
+    public EditHistory(int columns) {
+        this.columns = columns;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public boolean canUndo() {
+        return cursor != start;
+    }
+
+    public boolean canRedo() {
+        return cursor != end;
+    }
+
+    // Forgets everything; ids recorded on another grid width mean nothing on the new one.
+    public void reset(int newColumns) {
+        columns = newColumns;
+        start = cursor = end = 0;
+        transactionStart = -1;
+        discarding = false;
+    }
+
+    public void record(int borderId, int oldRef, int newRef) {
+        if (discarding || oldRef == newRef) return;
+        if (entries == null) entries = new long[CAPACITY];
+        // Una edición nueva descarta lo que se podía rehacer
+        end = cursor;
+        long entry = ((long) borderId << 32) | ((long) (oldRef & 0xFFFF) << 16) | (newRef & 0xFFFF);
+        if (transactionStart == -1) {
+            entry |= START;
+            transactionStart = end;
+        }
+        if (end - start == CAPACITY) {
+            if (start == transactionStart) {
+                // La transacción en curso no cabe: no se puede deshacer a medias, así que no se guarda
+                reset(columns);
+                discarding = true;
+                return;
+            }
+            do {
+                start++;
+            } while (start != end && (entries[start & MASK] & START) == 0);
+        }
+        entries[end & MASK] = entry;
+        cursor = ++end;
+    }
+
+    // Records every border that differs between two layouts on this grid (a paste, a clear).
+    public void recordDiff(ChestLayout before, ChestLayout after) {
+        int rows = Math.max(before.getRows(), after.getRows());
+        for (int row = 0; row <= rows; row++) {
+            for (int column = 0; column <= columns; column++) {
+                if (column < columns) {
+                    int id = ChestLayout.horizontalBorderId(row, column);
+                    record(id, before.getBorderRef(id), after.getBorderRef(id));
+                }
+                if (row < rows) {
+                    int id = ChestLayout.verticalBorderId(row, column);
+                    record(id, before.getBorderRef(id), after.getBorderRef(id));
+                }
+            }
+        }
+    }
+
+    // Closes the current transaction: the next record starts a new undo step.
+    public void commit() {
+        transactionStart = -1;
+        discarding = false;
+    }
+
+    // Reverts the last step, newest entry first. Each border must still hold the value the step gave it; if
+    // something else changed it the history no longer describes the layout and is dropped. The whole step is
+    // checked before anything is written, so a mismatch leaves the layout untouched. Returns whether the step
+    // was undone.
+    public boolean undo(ChestLayout layout, BorderWriter writer) {
+        commit();
+        if (cursor == start) return false;
+        int first = cursor;
+        do {
+            first--;
+        } while (first != start && (entries[first & MASK] & START) == 0);
+        // Un borde puede cambiar varias veces en un paso: sólo su última entrada debe coincidir con el layout
+        checked.clear();
+        for (int i = cursor - 1; i >= first; i--) {
+            long entry = entries[i & MASK];
+            int id = borderOf(entry);
+            if (checked.add(id) && layout.getBorderRef(id) != (int) (entry & 0xFFFF)) {
+                reset(columns);
+                return false;
+            }
+        }
+        while (cursor != first) {
+            long entry = entries[--cursor & MASK];
+            writer.write(borderOf(entry), (int) (entry >>> 16) & 0xFFFF);
+        }
+        return true;
+    }
+
+    // Re-applies the step after the cursor, oldest entry first, with the same check: the first entry of each
+    // border must find the value it was recorded over.
+    public boolean redo(ChestLayout layout, BorderWriter writer) {
+        commit();
+        if (cursor == end) return false;
+        int last = cursor;
+        do {
+            last++;
+        } while (last != end && (entries[last & MASK] & START) == 0);
+        checked.clear();
+        for (int i = cursor; i < last; i++) {
+            long entry = entries[i & MASK];
+            int id = borderOf(entry);
+            if (checked.add(id) && layout.getBorderRef(id) != ((int) (entry >>> 16) & 0xFFFF)) {
+                reset(columns);
+                return false;
+            }
+        }
+        while (cursor != last) {
+            long entry = entries[cursor++ & MASK];
+            writer.write(borderOf(entry), (int) (entry & 0xFFFF));
+        }
+        return true;
+    }
+
+    private static int borderOf(long entry) {
+        return (int) (entry >>> 32) & Integer.MAX_VALUE;
+    }
+}
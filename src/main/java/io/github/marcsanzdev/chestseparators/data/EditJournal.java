@@ -0,0 +1,445 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+// Append-only log of separator edits for one world.
+// Every edit is a small record (length + CRC32 + payload) appended to the active segment; a commit is a single
+// fdatasync of that segment instead of rewriting the chest's compressed NBT. Records are encoded on the caller's
+// thread and only queued there: the file work (creating, appending, syncing, closing segments) runs on the I/O
+// executor, which writes everything queued since its last pass and syncs once, so commits made in the same
+// frame share one fdatasync. Segments are sealed when the store is compacted and deleted only after the
+// compacted state has reached the disk, so after a crash replaying the remaining segments restores every
+// committed edit. Records are absolute (set edge, clear, full snapshot,
+// truncate), so replaying them over a store that already contains part of their effect is harmless.
+// Colours are written as ColorTable refs; refs that only exist in this client (escapes) carry their ARGB value.
+// A failed write may leave a torn record in its segment, and replay stops there: the segment takes no more
+// records, and the failure is reported so the store writes the affected state into its files instead of
+// relying on the journal.
+@Environment(EnvType.CLIENT)
+public class EditJournal {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_EXTENSION = ".log";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // 1 y 3 los usaron registros con colores ARGB de compilaciones intermedias: reservados, un segmento
+    // antiguo se detiene en ellos en vez de aplicarse con otro significado
+    private static final byte OP_CLEAR = 2;
+    private static final byte OP_TRUNCATE = 4;
+    private static final byte OP_EDGES = 5;
+    private static final byte OP_SNAPSHOT = 6;
+
+    private static final byte KEY_BLOCK = 0;
+    private static final byte KEY_ENTITY = 1;
+    private static final byte KEY_ENDER = 2;
+
+    // Receives replayed records in the order they were written.
+    public interface Visitor {
+        // edgeMask uses one bit per ChestLayout edge (1 << EDGE_TOP ...).
+        void edges(ChestKey key, int slot, int edgeMask, int colorRef);
+
+        void clear(ChestKey key);
+
+        void snapshot(ChestKey key, ChestLayout layout);
+
+        void truncate(ChestKey key, int maxSlotIndex);
+    }
+
+    private final Path dir;
+    private final String worldKey;
+    private final ColorTable colorTable;
+    // Segments that are closed but still needed until their edits are compacted into the store.
+    private final List<Path> sealed = new ArrayList<>();
+    // Segmentos devueltos por una compactación cuyas escrituras fallaron; van con la siguiente
+    private final ConcurrentLinkedQueue<Path> retained = new ConcurrentLinkedQueue<>();
+    private long nextSequence;
+    // Segmento que recibe los registros nuevos; null hasta el primero tras una rotación
+    private Path activeSegment;
+    private long activeSize;
+
+    // Registros encolados para el hilo de E/S y si ya tiene una pasada pendiente. Guardados por 'queued'.
+    private final List<QueuedRecord> queued = new ArrayList<>();
+    private boolean writeScheduled;
+    private final Executor ioExecutor;
+
+    // Sólo los toca el hilo de E/S
+    private FileChannel channel;
+    private Path channelSegment;
+    private boolean unsynced;
+    // Fin del último registro escrito entero en el canal
+    private long channelEnd;
+    // Segmentos con una escritura fallida: lo que se les añadiera quedaría detrás del registro roto
+    private final Set<Path> broken = new HashSet<>();
+    // Alguna escritura falló desde la última consulta
+    private final AtomicBoolean writeFailed = new AtomicBoolean();
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private final CRC32 crc = new CRC32();
+
+    // ioExecutor must run tasks one at a time in submission order (the writer's I/O thread).
+    public EditJournal(Path dir, String worldKey, ColorTable colorTable, Executor ioExecutor) {
+        this.dir = dir;
+        this.worldKey = worldKey;
+        this.colorTable = colorTable;
+        this.ioExecutor = ioExecutor;
+    }
+
+    // --- RECUPERACIÓN ---
+
+    // Replays every segment left by a previous session (normally none: a clean exit compacts and deletes them).
+    // A torn record at the end of a segment ends that segment. Returns the number of records replayed.
+    public int replay(Visitor visitor) {
+        List<Path> segments = listSegments();
+        int records = 0;
+        for (Path segment : segments) {
+            try {
+                records += replaySegment(Files.readAllBytes(segment), visitor, segment);
+            } catch (IOException e) {
+                System.err.println("[ChestSeparators] Could not read journal " + segment.getFileName() + ": " + e.getMessage());
+            }
+            sealed.add(segment);
+            nextSequence = Math.max(nextSequence, parseSequence(segment) + 1);
+        }
+        return records;
+    }
+
+    private int replaySegment(byte[] data, Visitor visitor, Path segment) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int records = 0;
+        while (buf.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buf.getInt();
+            int checksum = buf.getInt();
+            if (length <= 0 || length > buf.remaining()) break;
+            crc.reset();
+            crc.update(data, buf.position(), length);
+            if ((int) crc.getValue() != checksum) break;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, buf.position(), length));
+            buf.position(buf.position() + length);
+            applyRecord(in, visitor);
+            records++;
+        }
+        if (buf.hasRemaining()) {
+            System.err.println("[ChestSeparators] Ignoring torn tail of journal " + segment.getFileName());
+        }
+        return records;
+    }
+
+    private void applyRecord(DataInputStream in, Visitor visitor) throws IOException {
+        byte op = in.readByte();
+        ChestKey key = readKey(in);
+        switch (op) {
+            case OP_EDGES -> visitor.edges(key, VarInts.readVarInt(in), in.readUnsignedByte(), readRef(in));
+            case OP_CLEAR -> visitor.clear(key);
+            case OP_SNAPSHOT -> {
+                byte[] encoded = new byte[VarInts.readVarInt(in)];
+                in.readFully(encoded);
+                ChestLayout layout = new ChestLayout(0);
+                LayoutCodec.decode(encoded, layout, colorTable);
+                visitor.snapshot(key, layout);
+            }
+            case OP_TRUNCATE -> visitor.truncate(key, VarInts.readVarInt(in));
+            default -> throw new IOException("Unknown journal record " + op);
+        }
+    }
+
+    // --- ESCRITURA ---
+
+    public void appendEdges(ChestKey key, int slot, int edgeMask, int colorRef) {
+        try {
+            begin(OP_EDGES, key);
+            VarInts.writeVarInt(out, slot);
+            out.writeByte(edgeMask);
+            writeRef(colorRef);
+            commitRecord();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void appendClear(ChestKey key) {
+        try {
+            begin(OP_CLEAR, key);
+            commitRecord();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void appendSnapshot(ChestKey key, ChestLayout layout) {
+        try {
+            begin(OP_SNAPSHOT, key);
+            byte[] encoded = LayoutCodec.encode(layout, colorTable);
+            VarInts.writeVarInt(out, encoded.length);
+            out.write(encoded);
+            commitRecord();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void appendTruncate(ChestKey key, int maxSlotIndex) {
+        try {
+            begin(OP_TRUNCATE, key);
+            VarInts.writeVarInt(out, maxSlotIndex);
+            commitRecord();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Makes everything appended so far durable: the I/O thread writes the queued records and syncs the segment.
+    // Several calls before it gets to run are committed together.
+    public void sync() {
+        synchronized (queued) {
+            if (writeScheduled || queued.isEmpty()) return;
+            writeScheduled = true;
+        }
+        ioExecutor.execute(this::writeQueued);
+    }
+
+    // True once after a write on the I/O thread failed: the edits committed since the last rotation may not be
+    // in the journal, so the caller has to get them to disk some other way and rotate.
+    public boolean takeWriteFailure() {
+        return writeFailed.getAndSet(false);
+    }
+
+    // Bytes in the active segment; the store uses it to decide when to compact.
+    public long getActiveSize() {
+        return activeSize;
+    }
+
+    // Seals the active segment and hands over every sealed segment. The caller deletes them once the
+    // compacted store is on disk; new edits go to a fresh segment.
+    public List<Path> rotate() {
+        closeActive();
+        // Los más antiguos primero: si el borrado se corta, lo que queda son sólo segmentos posteriores
+        List<Path> segments = new ArrayList<>(retained);
+        retained.removeAll(segments);
+        segments.addAll(sealed);
+        sealed.clear();
+        return segments;
+    }
+
+    // Gives back segments whose compaction did not reach the disk, so a later compaction deletes them
+    // together with the newer ones instead of leaving them to be replayed over newer state. Any thread.
+    public void retain(List<Path> segments) {
+        retained.addAll(segments);
+    }
+
+    public void close() {
+        closeActive();
+    }
+
+    public static void deleteSegments(List<Path> segments) {
+        for (Path segment : segments) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                System.err.println("[ChestSeparators] Could not delete journal " + segment.getFileName() + ": " + e.getMessage());
+            }
+        }
+        // Un segmento viejo que reapareciera tras un corte se reaplicaría sobre un estado más nuevo
+        if (!segments.isEmpty()) WriteBehindQueue.syncDirectory(segments.get(0).getParent());
+    }
+
+    private void begin(byte op, ChestKey key) throws IOException {
+        buffer.reset();
+        out.writeByte(op);
+        writeKey(key);
+    }
+
+    private void commitRecord() {
+        if (activeSegment == null) {
+            activeSegment = dir.resolve(SEGMENT_PREFIX + nextSequence++ + SEGMENT_EXTENSION);
+            sealed.add(activeSegment);
+            activeSize = 0;
+        }
+        byte[] payload = buffer.toByteArray();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        byte[] record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .putInt(payload.length).putInt((int) crc.getValue()).put(payload).array();
+        synchronized (queued) {
+            queued.add(new QueuedRecord(activeSegment, record));
+        }
+        activeSize += record.length;
+    }
+
+    // Later records go to a new segment; the I/O thread writes, syncs and closes this one first.
+    private void closeActive() {
+        if (activeSegment == null) return;
+        sync();
+        ioExecutor.execute(this::closeChannel);
+        activeSegment = null;
+        activeSize = 0;
+    }
+
+    // --- HILO DE E/S ---
+
+    private record QueuedRecord(Path segment, byte[] bytes) {}
+
+    private void writeQueued() {
+        List<QueuedRecord> batch;
+        synchronized (queued) {
+            batch = new ArrayList<>(queued);
+            queued.clear();
+            writeScheduled = false;
+        }
+        try {
+            for (QueuedRecord record : batch) {
+                if (broken.contains(record.segment())) continue;
+                if (!record.segment().equals(channelSegment)) {
+                    closeChannel();
+                    openChannel(record.segment());
+                }
+                ByteBuffer buf = ByteBuffer.wrap(record.bytes());
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channelEnd += record.bytes().length;
+                unsynced = true;
+            }
+            if (unsynced) {
+                channel.force(false);
+                unsynced = false;
+            }
+        } catch (IOException e) {
+            System.err.println("[ChestSeparators] Could not write journal: " + e.getMessage());
+            abandonChannel();
+            writeFailed.set(true);
+        }
+    }
+
+    // Tras un fallo no se sabe dónde quedó el canal: se recorta el registro a medias si se puede y el
+    // segmento no vuelve a abrirse; la siguiente compactación lo borra
+    private void abandonChannel() {
+        if (channel == null) return;
+        broken.add(channelSegment);
+        try {
+            channel.truncate(channelEnd);
+        } catch (IOException e) {
+            System.err.println("[ChestSeparators] Could not trim journal " + channelSegment.getFileName() + ": " + e.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        channel = null;
+        channelSegment = null;
+        unsynced = false;
+    }
+
+    private void openChannel(Path segment) throws IOException {
+        Files.createDirectories(dir);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channelSegment = segment;
+        channelEnd = channel.size();
+        // La entrada del segmento nuevo tiene que sobrevivir a un corte para que su fdatasync sirva de algo
+        WriteBehindQueue.syncDirectory(dir);
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            if (unsynced) channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[ChestSeparators] Could not close journal " + channelSegment.getFileName() + ": " + e.getMessage());
+        }
+        channel = null;
+        channelSegment = null;
+        unsynced = false;
+    }
+
+    // --- COLORES ---
+
+    // Los escapes sólo existen en este cliente: se anota el color ARGB en su lugar
+    private void writeRef(int ref) throws IOException {
+        if (ColorTable.isEscape(ref)) {
+            VarInts.writeVarInt(out, ColorTable.FIRST_ESCAPE);
+            out.writeInt(colorTable.resolve(ref));
+        } else {
+            VarInts.writeVarInt(out, ref);
+        }
+    }
+
+    private int readRef(DataInputStream in) throws IOException {
+        int ref = VarInts.readVarInt(in);
+        return ColorTable.isEscape(ref) ? colorTable.refForColor(in.readInt()) : ref;
+    }
+
+    // --- CLAVES ---
+
+    private void writeKey(ChestKey key) throws IOException {
+        if (key.ender()) {
+            out.writeByte(KEY_ENDER);
+        } else if (key.entity() != null) {
+            out.writeByte(KEY_ENTITY);
+            out.writeLong(key.entity().getMostSignificantBits());
+            out.writeLong(key.entity().getLeastSignificantBits());
+        } else {
+            out.writeByte(KEY_BLOCK);
+            out.writeUTF(key.dimension());
+            out.writeLong(key.pos());
+        }
+    }
+
+    private ChestKey readKey(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        return switch (kind) {
+            case KEY_ENDER -> new ChestKey(worldKey, null, 0L, null, true);
+            case KEY_ENTITY -> new ChestKey(worldKey, null, 0L, new UUID(in.readLong(), in.readLong()), false);
+            case KEY_BLOCK -> new ChestKey(worldKey, in.readUTF(), in.readLong(), null, false);
+            default -> throw new IOException("Unknown journal key " + kind);
+        };
+    }
+
+    // --- SEGMENTOS ---
+
+    private List<Path> listSegments() {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return segments;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_EXTENSION)) {
+            for (Path segment : stream) {
+                if (parseSequence(segment) >= 0) segments.add(segment);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        segments.sort((a, b) -> Long.compare(parseSequence(a), parseSequence(b)));
+        return segments;
+    }
+
+    private static long parseSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXTENSION.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+// File-based backend: block containers go into region files, entity inventories and the ender chest keep
+// one small file each, and the world palette has its own file. Layouts shared by several block containers
+// are stored once in the template store and referenced from their region entries. Everything lives under the context's world
+// directory; reads are served from an LRU cache of layouts. Edits are made durable by appending them to the
+// edit journal and are written into the region/entity files in batches when the journal is compacted
+// (screen close, journal size threshold, failed journal write, world exit).
+@Environment(EnvType.CLIENT)
+public class FileSeparatorStorage implements SeparatorStorage {
+
+    private static final String FOLDER_NAME = "separators";
+    private static final String REGIONS_FOLDER_NAME = "regions";
+    private static final String INDEX_FILE_NAME = "position_index.bin";
+    private static final String ENDER_FILE_NAME = "ender_chest.dat";
+    private static final String PALETTE_FILE_NAME = "world_palette.dat";
+    private static final String JOURNAL_FOLDER_NAME = "journal";
+    private static final String TEMPLATES_FILE_NAME = "templates.bin";
+    // Marca de mundo ya convertido por completo al formato compacto
+    private static final String COMPACT_MARKER_FILE_NAME = "format_grid";
+
+    // Tamaño del segmento activo a partir del cual se vuelca todo a las regiones
+    private static final long COMPACT_THRESHOLD_BYTES = 256 * 1024;
+    // Regiones residentes: una por cada LAYOUTS_PER_REGION layouts que caben en la caché, con un mínimo
+    private static final int LAYOUTS_PER_REGION = 16;
+    private static final int MIN_LOADED_REGIONS = 4;
+    // Marca de borrado en stagedFiles
+    private static final byte[] DELETED = new byte[0];
+
+    private final StorageContext context;
+    private final WriteBehindQueue writer;
+    private final RegionFileStore regionStore;
+    private final TemplateStore templateStore;
+    private final LayoutCache layoutCache;
+    // Resuelve los refs de color de los layouts al codificarlos
+    private final ColorTable colorTable;
+    private final StorageMetrics metrics = new StorageMetrics();
+    private final EditJournal journal;
+    // Archivos de entidad/ender cambiados en memoria y aún no enviados al escritor (cubiertos por el diario)
+    private final Map<Path, byte[]> stagedFiles = new LinkedHashMap<>();
+    private final ChestLayout scratch = new ChestLayout(0);
+    // Lecturas de regiones para la precarga; nunca comparte hilo con las escrituras
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChestSeparators-Prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Claves cuya región se está leyendo; se decodifican a la caché al terminar
+    private final Set<ChestKey> prefetchQueue = new LinkedHashSet<>();
+    // Clave cuyas ediciones ya están en el segmento activo del diario desde el último guardado
+    private ChestKey journaledKey;
+
+    // Rutas resueltas una sola vez al abrir la sesión
+    private final Path separatorsDir;
+    private final Path enderFile;
+    private final Path paletteFile;
+    private final Path indexFile;
+
+    // Opens the world: migrates legacy per-chest files, loads the position index (or rebuilds it) and replays
+    // the edit journal left behind by a session that did not close cleanly.
+    public FileSeparatorStorage(StorageContext context, WriteBehindQueue writer, ColorTable colorTable, int cacheCapacity) {
+        this.context = context;
+        this.writer = writer;
+        this.colorTable = colorTable;
+        this.layoutCache = new LayoutCache(cacheCapacity);
+        Path worldDir = context.worldDir();
+        this.separatorsDir = worldDir.resolve(FOLDER_NAME);
+        this.enderFile = worldDir.resolve(ENDER_FILE_NAME);
+        this.paletteFile = worldDir.resolve(PALETTE_FILE_NAME);
+        this.indexFile = worldDir.resolve(INDEX_FILE_NAME);
+        try {
+            metrics.countDirectoryCreate();
+            Files.createDirectories(worldDir);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.regionStore = new RegionFileStore(worldDir.resolve(REGIONS_FOLDER_NAME), writer, metrics,
+                Math.max(MIN_LOADED_REGIONS, cacheCapacity / LAYOUTS_PER_REGION));
+        this.templateStore = new TemplateStore(worldDir.resolve(TEMPLATES_FILE_NAME), writer, metrics, colorTable);
+        templateStore.load();
+        regionStore.migrateLegacyFiles(separatorsDir);
+        boolean indexRebuilt = !regionStore.loadIndex(indexFile);
+        if (indexRebuilt) {
+            regionStore.buildIndex();
+        }
+        this.journal = new EditJournal(worldDir.resolve(JOURNAL_FOLDER_NAME), context.worldKey(), colorTable, writer::execute);
+        int replayed = journal.replay(new JournalReplay());
+        // Tras un cierre no limpio los contadores guardados pueden no cuadrar con las regiones
+        if (replayed > 0 || indexRebuilt) {
+            templateStore.recount(regionStore::forEachPayload);
+        }
+        compact();
+    }
+
+    @Override
+    public StorageContext getContext() {
+        return context;
+    }
+
+    public LayoutCache getLayoutCache() {
+        return layoutCache;
+    }
+
+    public RegionFileStore getRegionStore() {
+        return regionStore;
+    }
+
+    public TemplateStore getTemplateStore() {
+        return templateStore;
+    }
+
+    @Override
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    // --- CONSULTAS ---
+
+    @Override
+    public boolean contains(ChestKey key) {
+        metrics.countOperation();
+        if (isBlock(key)) return regionStore.contains(key.dimension(), key.pos());
+        Path path = getFile(key);
+        byte[] staged = stagedFiles.get(path);
+        if (staged != null) return staged != DELETED;
+        Supplier<byte[]> pendingWrite = writer.getPending(path);
+        if (pendingWrite != null) return pendingWrite.get() != null;
+        return exists(path);
+    }
+
+    @Override
+    public long[] getStoredPositions(String dimensionId) {
+        return regionStore.getIndex().toArray(dimensionId);
+    }
+
+    @Override
+    public long[] getStoredPositionsInChunk(String dimensionId, int chunkX, int chunkZ) {
+        return regionStore.getIndex().getChunkPositions(dimensionId, chunkX, chunkZ);
+    }
+
+    // --- PRECARGA ---
+
+    // Only block containers are prefetched: entity and ender layouts are single small files opened one at a time.
+    @Override
+    public void prefetch(ChestKey key) {
+        if (!isBlock(key) || layoutCache.contains(key)) return;
+        if (!regionStore.contains(key.dimension(), key.pos())) return;
+        regionStore.prefetch(key.dimension(), key.pos(), prefetchExecutor);
+        prefetchQueue.add(key);
+    }
+
+    @Override
+    public int pollPrefetches(int maxLayouts) {
+        regionStore.installPrefetched();
+        int warmed = 0;
+        Iterator<ChestKey> it = prefetchQueue.iterator();
+        while (it.hasNext() && warmed < maxLayouts) {
+            ChestKey key = it.next();
+            if (!regionStore.isLoaded(key.dimension(), key.pos())) {
+                // Lectura fallida: la clave se descarta y la región se leerá al abrir el contenedor
+                if (!regionStore.isPrefetching(key.dimension(), key.pos())) it.remove();
+                continue;
+            }
+            it.remove();
+            if (layoutCache.contains(key)) continue;
+            load(key, scratch);
+            warmed++;
+        }
+        return warmed;
+    }
+
+    @Override
+    public void load(ChestKey key, ChestLayout into) {
+        metrics.countOperation();
+        into.clear();
+        ChestLayout cached = layoutCache.get(key);
+        if (cached != null) {
+            into.copyFrom(cached);
+            return;
+        }
+        if (isBlock(key)) {
+            // Sin entrada en el índice no hace falta abrir la región
+            if (regionStore.contains(key.dimension(), key.pos())) {
+                byte[] payload = regionStore.read(key.dimension(), key.pos());
+                ChestLayout shared = templateStore.resolve(payload);
+                if (shared != null) {
+                    // La instancia de la plantilla es del TemplateStore: la caché guarda su propia copia
+                    into.copyFrom(shared);
+                    layoutCache.put(key, shared.copy());
+                    return;
+                }
+                decode(payload, into, key);
+            }
+        } else {
+            readFile(getFile(key), into);
+        }
+        layoutCache.put(key, into.copy());
+    }
+
+    // --- ESCRITURA ---
+
+    // Commit of an edit: when its edits were journaled through recordEdges/recordSnapshot only the journal is
+    // synced, otherwise a snapshot record is appended first. Both only queue work for the I/O thread; the
+    // region/file rewrite happens at the next compaction.
+    @Override
+    public void save(ChestKey key, ChestLayout layout) {
+        metrics.countOperation();
+        if (!key.equals(journaledKey)) {
+            journal.appendSnapshot(key, layout);
+        }
+        journaledKey = null;
+        journal.sync();
+        applySave(key, layout);
+        compactIfNeeded();
+    }
+
+    @Override
+    public void delete(ChestKey key) {
+        metrics.countOperation();
+        journal.appendClear(key);
+        journal.sync();
+        applyDelete(key);
+        compactIfNeeded();
+    }
+
+    // Journaled as a snapshot of the destination plus a clear of the source, both absolute records.
+    @Override
+    public void move(ChestKey from, ChestKey to) {
+        metrics.countOperation();
+        if (!isBlock(from) || !isBlock(to)) return;
+        if (!regionStore.contains(from.dimension(), from.pos())) return;
+        load(from, scratch);
+        if (scratch.isEmpty()) return;
+        journal.appendSnapshot(to, scratch);
+        journal.appendClear(from);
+        journal.sync();
+        applySave(to, scratch);
+        applyDelete(from);
+        compactIfNeeded();
+    }
+
+    @Override
+    public void truncate(ChestKey key, int maxSlotIndex) {
+        metrics.countOperation();
+        if (!isBlock(key)) return;
+        if (!regionStore.contains(key.dimension(), key.pos())) return;
+        load(key, scratch);
+        // Los bordes compartidos con un slot que se queda no se borran: puede que no cambie nada
+        long version = scratch.getVersion();
+        scratch.truncate(maxSlotIndex);
+        if (scratch.getVersion() == version) return;
+        journal.appendTruncate(key, maxSlotIndex);
+        journal.sync();
+        applySave(key, scratch);
+        compactIfNeeded();
+    }
+
+    @Override
+    public void recordEdges(ChestKey key, int slot, int edgeMask, int colorRef) {
+        journal.appendEdges(key, slot, edgeMask, colorRef);
+        journaledKey = key;
+    }
+
+    @Override
+    public void recordSnapshot(ChestKey key, ChestLayout layout) {
+        journal.appendSnapshot(key, layout);
+        journaledKey = key;
+    }
+
+    private void applySave(ChestKey key, ChestLayout layout) {
+        if (isBlock(key)) {
+            byte[] previous = readEntry(key);
+            if (layout.isEmpty()) {
+                templateStore.release(previous);
+                regionStore.stageDelete(key.dimension(), key.pos());
+                layoutCache.put(key, layout.copy());
+                return;
+            }
+            // Se adquiere antes de soltar la anterior: volver a guardar el mismo contenido no borra la plantilla
+            byte[] payload = templateStore.acquire(LayoutCodec.encode(layout, colorTable), layout);
+            templateStore.release(previous);
+            regionStore.stageWrite(key.dimension(), key.pos(), payload);
+            // Write-through: la caché queda con el estado recién guardado en vez de vaciarse
+            layoutCache.put(key, layout.copy());
+            return;
+        }
+        layoutCache.put(key, layout.copy());
+        // Se codifica ya: el layout sigue mutando mientras el escritor espera
+        stagedFiles.put(getFile(key), layout.isEmpty() ? DELETED : LayoutCodec.encode(layout, colorTable));
+    }
+
+    private void applyDelete(ChestKey key) {
+        layoutCache.invalidate(key);
+        if (isBlock(key)) {
+            templateStore.release(readEntry(key));
+            regionStore.stageDelete(key.dimension(), key.pos());
+        } else {
+            stagedFiles.put(getFile(key), DELETED);
+        }
+    }
+
+    // --- COMPACTACIÓN ---
+
+    // Si el diario no pudo escribir, lo confirmado sólo está en memoria: se escribe ya en las regiones y ficheros
+    private void compactIfNeeded() {
+        if (journal.takeWriteFailure() || journal.getActiveSize() >= COMPACT_THRESHOLD_BYTES) compact();
+    }
+
+    // Hands every staged change to the writer and starts a new journal segment. The old segments are deleted
+    // on the I/O thread once those writes have succeeded (and their directories are synced); until then they
+    // still cover the staged state, and if a write fails they go back to the journal for the next compaction.
+    private void compact() {
+        List<Path> segments = journal.rotate();
+        // Lo editado antes de este punto deja de estar en el segmento activo
+        journaledKey = null;
+        regionStore.flushStaged();
+        templateStore.flush();
+        for (Map.Entry<Path, byte[]> entry : stagedFiles.entrySet()) {
+            byte[] data = entry.getValue();
+            writer.enqueue(entry.getKey(), data == DELETED ? () -> null : () -> data);
+        }
+        stagedFiles.clear();
+        if (!segments.isEmpty()) {
+            writer.runAfterPendingWrites(() -> EditJournal.deleteSegments(segments), () -> journal.retain(segments));
+        }
+    }
+
+    // Applies replayed records without journaling them again (their segments are still on disk).
+    private final class JournalReplay implements EditJournal.Visitor {
+        private final ChestLayout layout = new ChestLayout(0);
+
+        @Override
+        public void edges(ChestKey key, int slot, int edgeMask, int colorRef) {
+            load(key, layout);
+            for (int edge = 0; edge < ChestLayout.EDGES_PER_SLOT; edge++) {
+                if ((edgeMask & (1 << edge)) != 0) layout.setRef(slot, edge, colorRef);
+            }
+            applySave(key, layout);
+        }
+
+        @Override
+        public void clear(ChestKey key) {
+            applyDelete(key);
+        }
+
+        @Override
+        public void snapshot(ChestKey key, ChestLayout snapshot) {
+            applySave(key, snapshot);
+        }
+
+        @Override
+        public void truncate(ChestKey key, int maxSlotIndex) {
+            load(key, layout);
+            layout.truncate(maxSlotIndex);
+            applySave(key, layout);
+        }
+    }
+
+    // --- CONVERSIÓN DE FORMATO ---
+
+    // Optional bulk conversion of every layout still stored as gzip NBT (regions, entity files, ender chest)
+    // to the compact format. Runs once per world: a marker file records that the world is fully converted.
+    public int convertToCompactFormat() {
+        Path marker = context.worldDir().resolve(COMPACT_MARKER_FILE_NAME);
+        if (exists(marker)) return 0;
+
+        compact();
+        int converted = regionStore.convertToCompactFormat();
+        List<Path> files = new ArrayList<>();
+        files.add(enderFile);
+        if (Files.isDirectory(separatorsDir)) {
+            metrics.countDirectoryScan();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(separatorsDir, "entity_*.dat")) {
+                for (Path file : stream) files.add(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (Path file : files) {
+            if (!exists(file)) continue;
+            try {
+                metrics.countFileRead();
+                byte[] data = Files.readAllBytes(file);
+                if (LayoutCodec.isCompact(data)) continue;
+                byte[] compactData = LayoutCodec.toCompact(data);
+                writer.enqueue(file, () -> compactData);
+                converted++;
+            } catch (IOException e) {
+                System.err.println("[ChestSeparators] Skipping unreadable layout " + file.getFileName() + ": " + e.getMessage());
+            }
+        }
+        writer.enqueue(marker, () -> new byte[0]);
+        return converted;
+    }
+
+    // --- PALETA ---
+
+    // Se lee una vez por sesión de mundo; un guardado aún en cola tiene prioridad sobre el disco.
+    @Override
+    public int[] loadPalette() {
+        int[] colors = new int[8];
+        Path path = paletteFile;
+
+        try {
+            NbtCompound root = null;
+            Supplier<byte[]> pendingWrite = writer.getPending(path);
+            if (pendingWrite != null) {
+                byte[] data = pendingWrite.get();
+                if (data != null) root = NbtIo.readCompressed(new ByteArrayInputStream(data), NbtSizeTracker.ofUnlimitedBytes());
+            } else if (exists(path)) {
+                metrics.countFileRead();
+                root = NbtIo.readCompressed(path, NbtSizeTracker.ofUnlimitedBytes());
+            }
+            if (root != null && root.contains("Palette")) {
+                root.getIntArray("Palette").ifPresent(loadedColors ->
+                        System.arraycopy(loadedColors, 0, colors, 0, Math.min(loadedColors.length, colors.length)));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return colors;
+    }
+
+    // Guardado diferido: varios cambios dentro de la ventana del escritor acaban en una sola escritura.
+    @Override
+    public void savePalette(int[] colors) {
+        Path path = paletteFile;
+        NbtCompound root = new NbtCompound();
+        root.putIntArray("Palette", colors.clone());
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            NbtIo.writeCompressed(root, bytes);
+            byte[] data = bytes.toByteArray();
+            writer.enqueue(path, () -> data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // --- CICLO DE VIDA ---
+
+    @Override
+    public int getPendingWriteCount() {
+        return writer.getPendingWriteCount();
+    }
+
+    @Override
+    public void flush() {
+        compact();
+        writer.flush();
+    }
+
+    @Override
+    public void flushAsync() {
+        compact();
+        writer.flushAsync();
+    }
+
+    @Override
+    public void close() {
+        compact();
+        journal.close();
+        writer.flush();
+        prefetchExecutor.shutdownNow();
+        prefetchQueue.clear();
+        regionStore.saveIndex(indexFile);
+        layoutCache.clear();
+        templateStore.clearDecoded();
+    }
+
+    // --- RUTAS ---
+
+    private static boolean isBlock(ChestKey key) {
+        return key.dimension() != null;
+    }
+
+    private Path getFile(ChestKey key) {
+        if (key.ender()) return enderFile;
+        return separatorsDir.resolve("entity_" + key.entity() + ".dat");
+    }
+
+    // Payload actual de la entrada de un bloque (plantilla o layout), null si no tiene
+    private byte[] readEntry(ChestKey key) {
+        if (!regionStore.contains(key.dimension(), key.pos())) return null;
+        return regionStore.read(key.dimension(), key.pos());
+    }
+
+    private boolean exists(Path path) {
+        metrics.countFileCheck();
+        return Files.exists(path);
+    }
+
+    private void readFile(Path path, ChestLayout into) {
+        byte[] staged = stagedFiles.get(path);
+        if (staged != null) {
+            if (staged != DELETED) decode(staged, into, path.getFileName());
+            return;
+        }
+        // Si hay una escritura en cola para este archivo, es más reciente que lo que hay en disco
+        Supplier<byte[]> pendingWrite = writer.getPending(path);
+        if (pendingWrite != null) {
+            decode(pendingWrite.get(), into, path.getFileName());
+            return;
+        }
+        if (!exists(path)) return;
+        try {
+            metrics.countFileRead();
+            decode(Files.readAllBytes(path), into, path.getFileName());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Acepta el formato indexado, el compacto y el NBT antiguo; un dato ilegible deja el layout vacío.
+    private void decode(byte[] data, ChestLayout into, Object source) {
+        if (data == null) return;
+        try {
+            LayoutCodec.decode(data, into, colorTable);
+        } catch (IOException | RuntimeException e) {
+            into.clear();
+            System.err.println("[ChestSeparators] Unreadable layout " + source + ": " + e.getMessage());
+        }
+    }
+}
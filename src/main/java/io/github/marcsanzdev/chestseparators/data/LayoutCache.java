@@ -0,0 +1,81 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Size-bounded LRU cache of decoded chest layouts.
+// Sits in front of the region/file readers so that re-opening a recently used chest does not
+// re-read and re-inflate its data. Empty layouts are cached as well, since most containers a player
+// opens have no separators at all. Values are owned by the cache: callers store and receive copies.
+@Environment(EnvType.CLIENT)
+public class LayoutCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private int capacity;
+    private long hits = 0;
+    private long misses = 0;
+
+    private final LinkedHashMap<ChestKey, ChestLayout> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ChestKey, ChestLayout> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    public LayoutCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    public synchronized ChestLayout get(ChestKey key) {
+        ChestLayout layout = entries.get(key);
+        if (layout == null) misses++;
+        else hits++;
+        return layout;
+    }
+
+    // Lookup that neither counts as a hit or miss nor refreshes the entry's recency.
+    public synchronized boolean contains(ChestKey key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void put(ChestKey key, ChestLayout layout) {
+        if (capacity == 0) return;
+        entries.put(key, layout);
+    }
+
+    public synchronized void invalidate(ChestKey key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        while (entries.size() > this.capacity) {
+            ChestKey eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+        }
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,230 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Conversion between ChestLayout and its persisted bytes.
+//
+// Grid format (v5), written for every save. Each border shared by two slots is stored once:
+//   byte    FORMAT_GRID
+//   varint  columns of the layout grid
+//   varint  rows (those up to the highest painted slot)
+//   bytes   bitmap of the (rows + 1) * columns horizontal borders, then of the rows * (columns + 1)
+//           vertical ones, row by row, bit 0 of the first byte first; a set bit = painted border
+//   varint  literal count, then one int (ARGB) per colour that is not in the world colour table
+//   varint  per painted border, horizontal ones first: 1 .. 24 = ColorTable ref (standard and custom
+//           colours), 25 + i = literal[i]
+// Standard and custom borders cost one byte; the custom refs stay linked to the world's custom colours.
+//
+// Template reference, written by TemplateStore in place of a shared layout:
+//   byte    FORMAT_TEMPLATE
+//   long    hash of the template's encoded bytes
+// It is resolved by the store and is never passed to decode().
+//
+// Legacy format, still read and folded into the grid (9 columns, the width of every container it was written
+// for; where two slots disagree on a shared border, a painted edge wins over an empty one):
+//   v1: gzip'd NBT { Separators: { "<slot>": [top, bottom, left, right], ... } }.
+// Gzip data always starts with 0x1F, so the first byte tells the formats apart.
+@Environment(EnvType.CLIENT)
+public final class LayoutCodec {
+
+    private static final String SEPARATORS_KEY = "Separators";
+
+    // v1 es el NBT, que se reconoce por su cabecera gzip; 2 y 3 los usaron formatos por slot de compilaciones
+    // intermedias y quedan reservados para que un dato antiguo se rechace en vez de leerse como otro formato
+    static final byte FORMAT_TEMPLATE = 4;
+    static final byte FORMAT_GRID = 5;
+    private static final int TEMPLATE_REF_SIZE = 9;
+    private static final int GZIP_MAGIC = 0x1F;
+
+    private LayoutCodec() {}
+
+    // --- FORMATO DE REJILLA ---
+
+    public static byte[] encode(ChestLayout layout, ColorTable table) {
+        int columns = layout.getColumns();
+        int rows = 0;
+        for (int slot = layout.nextOccupied(0); slot != -1; slot = layout.nextOccupied(slot + 1)) {
+            rows = slot / columns + 1;
+        }
+        int horizontalCount = (rows + 1) * columns;
+        int verticalCount = rows * (columns + 1);
+
+        // Colores fuera de la tabla (escapes); en la práctica son muy pocos, la búsqueda lineal basta
+        int[] literals = new int[Math.max(1, horizontalCount + verticalCount)];
+        int literalCount = 0;
+        for (int i = 0; i < horizontalCount + verticalCount; i++) {
+            int ref = borderRef(layout, i, horizontalCount);
+            if (ColorTable.isEscape(ref)) {
+                int color = table.resolve(ref);
+                if (indexOf(literals, literalCount, color) < 0) literals[literalCount++] = color;
+            }
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + (horizontalCount + verticalCount) / 8 + literalCount * 4 + layout.getOccupiedCount() * 2);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_GRID);
+            VarInts.writeVarInt(out, columns);
+            VarInts.writeVarInt(out, rows);
+            int total = horizontalCount + verticalCount;
+            for (int base = 0; base < total; base += 8) {
+                int bits = 0;
+                for (int i = 0; i < 8 && base + i < total; i++) {
+                    if (borderRef(layout, base + i, horizontalCount) != ColorTable.NONE) bits |= 1 << i;
+                }
+                out.writeByte(bits);
+            }
+            VarInts.writeVarInt(out, literalCount);
+            for (int i = 0; i < literalCount; i++) {
+                out.writeInt(literals[i]);
+            }
+            for (int i = 0; i < total; i++) {
+                int ref = borderRef(layout, i, horizontalCount);
+                if (ref == ColorTable.NONE) continue;
+                if (ColorTable.isEscape(ref)) {
+                    ref = ColorTable.FIRST_ESCAPE + indexOf(literals, literalCount, table.resolve(ref));
+                }
+                VarInts.writeVarInt(out, ref);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream no lanza IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Borde i-ésimo en el orden del formato: primero los horizontales, luego los verticales, fila a fila
+    private static int borderRef(ChestLayout layout, int i, int horizontalCount) {
+        int columns = layout.getColumns();
+        if (i < horizontalCount) return layout.getHorizontalRef(i / columns, i % columns);
+        i -= horizontalCount;
+        return layout.getVerticalRef(i / (columns + 1), i % (columns + 1));
+    }
+
+    private static void decodeGrid(byte[] data, ChestLayout layout, ColorTable table) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+        int columns = VarInts.readVarInt(in);
+        int rows = VarInts.readVarInt(in);
+        long borders = (long) (rows + 1) * columns + (long) rows * (columns + 1);
+        if (columns <= 0 || rows < 0 || borders > data.length * 8L) {
+            throw new IOException("Bad grid size " + columns + "x" + rows);
+        }
+        int horizontalCount = (rows + 1) * columns;
+        int total = horizontalCount + rows * (columns + 1);
+        byte[] bitmap = new byte[(total + 7) >>> 3];
+        in.readFully(bitmap);
+        int literalCount = VarInts.readVarInt(in);
+        if (literalCount < 0 || literalCount > data.length) throw new IOException("Bad palette size " + literalCount);
+        int[] literalRefs = new int[literalCount];
+        for (int i = 0; i < literalCount; i++) {
+            literalRefs[i] = table.refForColor(in.readInt());
+        }
+
+        layout.reshape(columns);
+        layout.ensureCapacity(rows * columns);
+        for (int i = 0; i < total; i++) {
+            if ((bitmap[i >>> 3] & (1 << (i & 7))) == 0) continue;
+            int code = VarInts.readVarInt(in);
+            int ref = code;
+            if (code >= ColorTable.FIRST_ESCAPE) {
+                if (code - ColorTable.FIRST_ESCAPE >= literalCount) throw new IOException("Palette reference out of range: " + code);
+                ref = literalRefs[code - ColorTable.FIRST_ESCAPE];
+            }
+            if (i < horizontalCount) {
+                layout.setHorizontalRef(i / columns, i % columns, ref);
+            } else {
+                int v = i - horizontalCount;
+                layout.setVerticalRef(v / (columns + 1), v % (columns + 1), ref);
+            }
+        }
+    }
+
+    // Reads any format into 'layout' (which is not cleared first). Colours outside the table are interned in it.
+    public static void decode(byte[] data, ChestLayout layout, ColorTable table) throws IOException {
+        if (data.length == 0) return;
+        if (data[0] == FORMAT_GRID) {
+            decodeGrid(data, layout, table);
+        } else if ((data[0] & 0xFF) == GZIP_MAGIC) {
+            layout.reshape(ChestLayout.DEFAULT_COLUMNS);
+            readNbt(NbtIo.readCompressed(new ByteArrayInputStream(data), NbtSizeTracker.ofUnlimitedBytes()), layout, table);
+        } else {
+            throw new IOException("Unknown layout format " + data[0]);
+        }
+    }
+
+    public static boolean isCompact(byte[] data) {
+        return data.length > 0 && (data[0] == FORMAT_GRID || isTemplateRef(data));
+    }
+
+    // --- REFERENCIAS A PLANTILLAS ---
+
+    public static byte[] templateRef(long hash) {
+        byte[] ref = new byte[TEMPLATE_REF_SIZE];
+        ref[0] = FORMAT_TEMPLATE;
+        for (int i = 0; i < 8; i++) {
+            ref[1 + i] = (byte) (hash >>> (56 - 8 * i));
+        }
+        return ref;
+    }
+
+    public static boolean isTemplateRef(byte[] data) {
+        return data.length == TEMPLATE_REF_SIZE && data[0] == FORMAT_TEMPLATE;
+    }
+
+    public static long templateHash(byte[] ref) {
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (ref[1 + i] & 0xFF);
+        }
+        return hash;
+    }
+
+    // Re-encodes a legacy payload in the current format. The old format only holds literal colours, so a
+    // private table is enough: nothing is linked to the world's custom colours.
+    public static byte[] toCompact(byte[] data) throws IOException {
+        if (isCompact(data)) return data;
+        ColorTable table = new ColorTable();
+        ChestLayout layout = new ChestLayout(0);
+        decode(data, layout, table);
+        return encode(layout, table);
+    }
+
+    private static int indexOf(int[] palette, int size, int color) {
+        for (int i = 0; i < size; i++) {
+            if (palette[i] == color) return i;
+        }
+        return -1;
+    }
+
+    // --- FORMATO NBT (LEGADO) ---
+
+    static void readNbt(NbtCompound root, ChestLayout layout, ColorTable table) {
+        if (root == null || !root.contains(SEPARATORS_KEY)) return;
+        root.getCompound(SEPARATORS_KEY).ifPresent(separatorsTag -> {
+            for (String key : separatorsTag.getKeys()) {
+                try {
+                    int slot = Integer.parseInt(key);
+                    separatorsTag.getIntArray(key).ifPresent(data -> {
+                        if (data.length == 4) {
+                            layout.importRef(slot, ChestLayout.EDGE_TOP, table.refForColor(data[0]));
+                            layout.importRef(slot, ChestLayout.EDGE_BOTTOM, table.refForColor(data[1]));
+                            layout.importRef(slot, ChestLayout.EDGE_LEFT, table.refForColor(data[2]));
+                            layout.importRef(slot, ChestLayout.EDGE_RIGHT, table.refForColor(data[3]));
+                        }
+                    });
+                } catch (NumberFormatException ignored) {}
+            }
+        });
+    }
+}
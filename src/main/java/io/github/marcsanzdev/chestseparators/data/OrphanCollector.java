@@ -0,0 +1,209 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.screen.NamedScreenHandlerFactory;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Incremental garbage collector for layouts whose container no longer exists (blown up, broken by another
+// player, removed by world edits, dead pack animals...).
+// Block positions of the current dimension are checked a few at a time at the end of each world tick, within
+// a fixed time budget and only where the chunk is loaded on the client. A position that no longer holds a
+// container is only marked; it is deleted when it is still orphaned after the grace period, so transient states
+// (piston moves, a chest being replaced) never lose a layout. Entity layouts are marked when their entity
+// dies or vanishes close to the player, and unmarked if the entity shows up again; a vanished vehicle is only
+// deleted once the player has been back next to where it was for a while without it reappearing.
+// Confirmed orphans are queued and deleted under the same time budget; their journal records are committed
+// together by the I/O thread. Every deleted key is reported to the owner so it can drop what it keeps about
+// that container (its undo history).
+@Environment(EnvType.CLIENT)
+public class OrphanCollector {
+
+    // Tiempo máximo por tick; la hora se consulta cada CHECK_STRIDE posiciones y tras cada borrado
+    private static final long TICK_BUDGET_NANOS = 250_000L;
+    private static final int CHECK_STRIDE = 8;
+    // Pausa entre dos pasadas completas
+    private static final long PASS_INTERVAL_TICKS = 200L;
+    // Más cerca que esto el cliente sigue la entidad: si desaparece es que se ha destruido, no que se ha alejado
+    private static final double ENTITY_DESTROY_RANGE_SQ = 32.0 * 32.0;
+    // Confirmación de un vehículo desaparecido: el jugador pasa este tiempo a esta distancia de donde estaba
+    // con el chunk cargado y el vehículo no vuelve a aparecer
+    private static final int CONFIRM_RANGE = 16;
+    private static final int CONFIRM_TICKS = 100;
+
+    private final SeparatorStorage storage;
+    private final long graceTicks;
+    // Avisado tras cada borrado
+    private final Consumer<ChestKey> onDelete;
+
+    private String dimensionId;
+    private long[] pass = new long[0];
+    private int cursor;
+    private long nextPassTick;
+
+    // Posición -> tick en que se vio huérfana por primera vez
+    private final Long2LongOpenHashMap suspectBlocks = new Long2LongOpenHashMap();
+    private final Map<UUID, SuspectEntity> suspectEntities = new HashMap<>();
+    // Huérfanos confirmados pendientes de borrar
+    private final ArrayDeque<ChestKey> pendingDeletes = new ArrayDeque<>();
+
+    private long currentTick;
+    private int collected;
+
+    public OrphanCollector(SeparatorStorage storage, long graceTicks, Consumer<ChestKey> onDelete) {
+        this.storage = storage;
+        this.graceTicks = Math.max(0, graceTicks);
+        this.onDelete = onDelete;
+        suspectBlocks.defaultReturnValue(-1L);
+    }
+
+    // Layouts deleted since the session opened.
+    public int getCollectedCount() {
+        return collected;
+    }
+
+    public void tick(ClientWorld world, Entity player) {
+        long now = world.getTime();
+        currentTick = now;
+        String worldDimension = world.getRegistryKey().getValue().toString();
+        if (!worldDimension.equals(dimensionId)) {
+            // Cambio de dimensión: las marcas de bloques eran de la anterior
+            dimensionId = worldDimension;
+            suspectBlocks.clear();
+            pass = new long[0];
+            cursor = 0;
+            nextPassTick = now;
+        }
+
+        collectEntities(world, player, now);
+
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        while (!pendingDeletes.isEmpty()) {
+            ChestKey key = pendingDeletes.poll();
+            if (storage.contains(key)) {
+                storage.delete(key);
+                onDelete.accept(key);
+                collected++;
+            }
+            if (System.nanoTime() >= deadline) return;
+        }
+
+        if (cursor >= pass.length) {
+            if (now < nextPassTick) return;
+            pass = storage.getStoredPositions(dimensionId);
+            cursor = 0;
+            nextPassTick = now + PASS_INTERVAL_TICKS;
+        }
+
+        int checked = 0;
+        while (cursor < pass.length) {
+            checkBlock(world, pass[cursor++], now);
+            if (++checked % CHECK_STRIDE == 0 && System.nanoTime() >= deadline) break;
+        }
+    }
+
+    private void checkBlock(ClientWorld world, long pos, long now) {
+        int x = BlockPos.unpackLongX(pos);
+        int z = BlockPos.unpackLongZ(pos);
+        // Sin el chunk cargado no se sabe nada; la marca (si la hay) se mantiene
+        if (!world.isChunkLoaded(x >> 4, z >> 4)) return;
+
+        // Cualquier bloque con entidad no basta (un cartel, una cama): tiene que ser un contenedor
+        BlockEntity blockEntity = world.getBlockEntity(BlockPos.fromLong(pos));
+        if (blockEntity instanceof Inventory || blockEntity instanceof NamedScreenHandlerFactory) {
+            suspectBlocks.remove(pos);
+            return;
+        }
+        long since = suspectBlocks.get(pos);
+        if (since < 0) {
+            suspectBlocks.put(pos, now);
+        } else if (now - since >= graceTicks) {
+            suspectBlocks.remove(pos);
+            pendingDeletes.add(new ChestKey(storage.getContext().worldKey(), dimensionId, pos, null, false));
+        }
+    }
+
+    // --- ENTIDADES ---
+
+    // The client only learns that an entity is gone, not why. A dead animal is destroyed. A vehicle that
+    // vanishes well inside tracking range may have been destroyed, or may have been carried off through a
+    // portal or simply fallen out of tracking: it becomes a suspect that collectEntities() must confirm.
+    public void onEntityUnload(Entity entity, Entity player) {
+        if (entity.getRemovalReason() == null || !entity.getRemovalReason().shouldDestroy()) return;
+        boolean dead = entity instanceof LivingEntity living && living.isDead();
+        if (!dead) {
+            if (entity instanceof LivingEntity) return;
+            if (player == null || entity.squaredDistanceTo(player) > ENTITY_DESTROY_RANGE_SQ) return;
+            // Atravesar un portal también lo quita del mundo del cliente
+            BlockState state = entity.getEntityWorld().getBlockState(entity.getBlockPos());
+            if (state.isOf(Blocks.NETHER_PORTAL) || state.isOf(Blocks.END_PORTAL) || state.isOf(Blocks.END_GATEWAY)) return;
+        }
+        if (suspectEntities.containsKey(entity.getUuid())) return;
+        ChestKey key = ChestKey.entity(storage.getContext().worldKey(), entity.getUuid());
+        if (!storage.contains(key)) return;
+        String dimension = entity.getEntityWorld().getRegistryKey().getValue().toString();
+        suspectEntities.put(entity.getUuid(), new SuspectEntity(currentTick, dead, dimension, entity.getBlockPos().asLong()));
+    }
+
+    public void onEntityLoad(Entity entity) {
+        suspectEntities.remove(entity.getUuid());
+    }
+
+    private void collectEntities(ClientWorld world, Entity player, long now) {
+        if (suspectEntities.isEmpty()) return;
+        Iterator<Map.Entry<UUID, SuspectEntity>> it = suspectEntities.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, SuspectEntity> entry = it.next();
+            SuspectEntity suspect = entry.getValue();
+            if (now - suspect.since < graceTicks) continue;
+            if (!suspect.dead) {
+                if (isWatched(world, player, suspect)) suspect.confirmations++;
+                else suspect.confirmations = 0;
+                if (suspect.confirmations < CONFIRM_TICKS) continue;
+            }
+            it.remove();
+            pendingDeletes.add(ChestKey.entity(storage.getContext().worldKey(), entry.getKey()));
+        }
+    }
+
+    // Whether the client would be tracking the vehicle if it were still there: same dimension, chunk
+    // loaded and the player right next to its last position.
+    private boolean isWatched(ClientWorld world, Entity player, SuspectEntity suspect) {
+        if (player == null || !suspect.dimension.equals(dimensionId)) return false;
+        int x = BlockPos.unpackLongX(suspect.pos);
+        int z = BlockPos.unpackLongZ(suspect.pos);
+        if (!world.isChunkLoaded(x >> 4, z >> 4)) return false;
+        return Math.abs(player.getBlockX() - x) <= CONFIRM_RANGE && Math.abs(player.getBlockZ() - z) <= CONFIRM_RANGE;
+    }
+
+    private static final class SuspectEntity {
+        private final long since;
+        private final boolean dead;
+        private final String dimension;
+        private final long pos;
+        // Ticks seguidos que lleva confirmándose
+        private int confirmations;
+
+        private SuspectEntity(long since, boolean dead, String dimension, long pos) {
+            this.since = since;
+            this.dead = dead;
+            this.dimension = dimension;
+            this.pos = pos;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// In-memory set of every block position that currently has separator data, per dimension.
+// Loaded when a world is joined and kept in sync by every write and delete, so questions like
+// "does this broken block have a layout?" are answered with a single primitive hash lookup
+// instead of a filesystem probe.
+// The set is persisted as sorted, delta + varint encoded packed BlockPos keys per dimension, together
+// with a fingerprint of the region files it was built from. A fingerprint mismatch (crash before the
+// index was saved, region files edited or deleted externally) makes the caller rebuild it from the regions.
+// Positions are also bucketed by chunk, so everything stored around a point is found without a full scan.
+@Environment(EnvType.CLIENT)
+public class PositionIndex {
+
+    private static final int MAGIC = 0x43534958; // "CSIX"
+    private static final int FORMAT_VERSION = 1;
+
+    // Region files only know the sanitized dimension name; lookups arrive with the raw registry id.
+    private final Map<String, LongOpenHashSet> bySafeDimension = new HashMap<>();
+    private final Map<String, LongOpenHashSet> byDimensionId = new HashMap<>();
+    // Dimensión (nombre saneado) -> ChunkPos empaquetado -> posiciones de ese chunk
+    private final Map<String, Long2ObjectOpenHashMap<LongArrayList>> chunksBySafeDimension = new HashMap<>();
+
+    public synchronized boolean contains(String dimensionId, long pos) {
+        return getPositions(dimensionId).contains(pos);
+    }
+
+    public synchronized void add(String dimensionId, long pos) {
+        if (getPositions(dimensionId).add(pos)) {
+            addToChunk(RegionFileStore.toSafeDimension(dimensionId), pos);
+        }
+    }
+
+    public synchronized void remove(String dimensionId, long pos) {
+        if (getPositions(dimensionId).remove(pos)) {
+            removeFromChunk(RegionFileStore.toSafeDimension(dimensionId), pos);
+        }
+    }
+
+    synchronized void addBySafeDimension(String safeDimension, long pos) {
+        if (bySafeDimension.computeIfAbsent(safeDimension, d -> new LongOpenHashSet()).add(pos)) {
+            addToChunk(safeDimension, pos);
+        }
+    }
+
+    // Positions stored inside one chunk; empty when there are none.
+    public synchronized long[] getChunkPositions(String dimensionId, int chunkX, int chunkZ) {
+        Long2ObjectOpenHashMap<LongArrayList> chunks = chunksBySafeDimension.get(RegionFileStore.toSafeDimension(dimensionId));
+        if (chunks == null) return new long[0];
+        LongArrayList positions = chunks.get(ChunkPos.toLong(chunkX, chunkZ));
+        return positions == null ? new long[0] : positions.toLongArray();
+    }
+
+    private void addToChunk(String safeDimension, long pos) {
+        chunksBySafeDimension.computeIfAbsent(safeDimension, d -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(chunkOf(pos), c -> new LongArrayList())
+                .add(pos);
+    }
+
+    private void removeFromChunk(String safeDimension, long pos) {
+        Long2ObjectOpenHashMap<LongArrayList> chunks = chunksBySafeDimension.get(safeDimension);
+        if (chunks == null) return;
+        long chunk = chunkOf(pos);
+        LongArrayList positions = chunks.get(chunk);
+        if (positions == null) return;
+        positions.rem(pos);
+        if (positions.isEmpty()) chunks.remove(chunk);
+    }
+
+    private static long chunkOf(long pos) {
+        return ChunkPos.toLong(BlockPos.unpackLongX(pos) >> 4, BlockPos.unpackLongZ(pos) >> 4);
+    }
+
+    // Copy of the positions of one dimension, safe to walk while the index keeps changing.
+    public synchronized long[] toArray(String dimensionId) {
+        return getPositions(dimensionId).toLongArray();
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (LongOpenHashSet positions : bySafeDimension.values()) {
+            size += positions.size();
+        }
+        return size;
+    }
+
+    public synchronized void clear() {
+        bySafeDimension.clear();
+        byDimensionId.clear();
+        chunksBySafeDimension.clear();
+    }
+
+    // --- PERSISTENCIA ---
+
+    public synchronized byte[] serialize(long fingerprint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(fingerprint);
+        out.writeInt(bySafeDimension.size());
+        for (Map.Entry<String, LongOpenHashSet> entry : bySafeDimension.entrySet()) {
+            long[] sorted = entry.getValue().toLongArray();
+            Arrays.sort(sorted);
+
+            out.writeUTF(entry.getKey());
+            VarInts.writeVarInt(out, sorted.length);
+            long previous = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                // Primera clave en bruto, el resto como diferencias (siempre positivas al estar ordenadas)
+                VarInts.writeVarLong(out, i == 0 ? sorted[0] : sorted[i] - previous);
+                previous = sorted[i];
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Replaces the current contents with the persisted index, only if it was built from the same region files.
+    public synchronized boolean deserialize(byte[] data, long expectedFingerprint) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return false;
+            if (in.readLong() != expectedFingerprint) return false;
+
+            Map<String, LongOpenHashSet> loaded = new HashMap<>();
+            int dimensions = in.readInt();
+            for (int d = 0; d < dimensions; d++) {
+                String safeDimension = in.readUTF();
+                int count = VarInts.readVarInt(in);
+                LongOpenHashSet positions = new LongOpenHashSet(count);
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    long value = VarInts.readVarLong(in);
+                    previous = i == 0 ? value : previous + value;
+                    positions.add(previous);
+                }
+                loaded.put(safeDimension, positions);
+            }
+
+            clear();
+            bySafeDimension.putAll(loaded);
+            for (Map.Entry<String, LongOpenHashSet> entry : loaded.entrySet()) {
+                for (long pos : entry.getValue().toLongArray()) {
+                    addToChunk(entry.getKey(), pos);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private LongOpenHashSet getPositions(String dimensionId) {
+        LongOpenHashSet positions = byDimensionId.get(dimensionId);
+        if (positions == null) {
+            positions = bySafeDimension.computeIfAbsent(RegionFileStore.toSafeDimension(dimensionId), d -> new LongOpenHashSet());
+            byDimensionId.put(dimensionId, positions);
+        }
+        return positions;
+    }
+}
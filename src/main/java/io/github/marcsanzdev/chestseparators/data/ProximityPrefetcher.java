@@ -0,0 +1,86 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.util.math.BlockPos;
+
+// Warms the layout cache for the containers around the player, so that opening a chest in a storage room
+// never pays a cold region read on the render thread.
+// Whenever the player enters another chunk (or a chunk near the player is loaded), the stored positions of
+// the chunks within the radius are looked up in the position index and handed to the storage's background
+// prefetch; finished reads are decoded into the cache a few layouts per tick.
+@Environment(EnvType.CLIENT)
+public class ProximityPrefetcher {
+
+    // Layouts decodificados como mucho por tick al terminar las lecturas
+    private static final int WARM_PER_TICK = 16;
+
+    private final SeparatorStorage storage;
+    private final int radius;
+    private final int chunkRadius;
+    // No tiene sentido precargar más de lo que cabe en la caché
+    private final int maxPerScan;
+
+    private String dimensionId;
+    private int lastChunkX;
+    private int lastChunkZ;
+
+    public ProximityPrefetcher(SeparatorStorage storage, int radius, int maxPerScan) {
+        this.storage = storage;
+        this.radius = Math.max(0, radius);
+        this.chunkRadius = (this.radius + 15) >> 4;
+        this.maxPerScan = Math.max(0, maxPerScan);
+    }
+
+    public void tick(ClientWorld world, PlayerEntity player) {
+        if (player != null) {
+            String worldDimension = world.getRegistryKey().getValue().toString();
+            int chunkX = player.getBlockX() >> 4;
+            int chunkZ = player.getBlockZ() >> 4;
+            if (!worldDimension.equals(dimensionId) || chunkX != lastChunkX || chunkZ != lastChunkZ) {
+                dimensionId = worldDimension;
+                lastChunkX = chunkX;
+                lastChunkZ = chunkZ;
+                scanAround(player);
+            }
+        }
+        storage.pollPrefetches(WARM_PER_TICK);
+    }
+
+    // Chunks arrive after the player has moved into place (joining, teleporting), so a nearby chunk load
+    // is a second chance to pick up positions the last scan could not see yet.
+    public void onChunkLoad(ClientWorld world, int chunkX, int chunkZ, PlayerEntity player) {
+        if (player == null) return;
+        if (Math.abs(chunkX - (player.getBlockX() >> 4)) > chunkRadius || Math.abs(chunkZ - (player.getBlockZ() >> 4)) > chunkRadius) return;
+        prefetchChunk(world.getRegistryKey().getValue().toString(), chunkX, chunkZ, player, maxPerScan);
+    }
+
+    private void scanAround(PlayerEntity player) {
+        int centerX = player.getBlockX() >> 4;
+        int centerZ = player.getBlockZ() >> 4;
+        int budget = maxPerScan;
+        for (int dx = -chunkRadius; dx <= chunkRadius && budget > 0; dx++) {
+            for (int dz = -chunkRadius; dz <= chunkRadius && budget > 0; dz++) {
+                budget -= prefetchChunk(dimensionId, centerX + dx, centerZ + dz, player, budget);
+            }
+        }
+    }
+
+    private int prefetchChunk(String dimension, int chunkX, int chunkZ, PlayerEntity player, int budget) {
+        long[] positions = storage.getStoredPositionsInChunk(dimension, chunkX, chunkZ);
+        String worldKey = storage.getContext().worldKey();
+        long radiusSq = (long) radius * radius;
+        int requested = 0;
+        for (long pos : positions) {
+            if (requested >= budget) break;
+            long dx = BlockPos.unpackLongX(pos) - player.getBlockX();
+            long dz = BlockPos.unpackLongZ(pos) - player.getBlockZ();
+            if (dx * dx + dz * dz > radiusSq) continue;
+            storage.prefetch(new ChestKey(worldKey, dimension, pos, null, false));
+            requested++;
+        }
+        return requested;
+    }
+}
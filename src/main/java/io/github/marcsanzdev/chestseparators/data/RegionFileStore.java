@@ -0,0 +1,688 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+// Groups the separator layouts of block containers into one file per 32x32 chunk region,
+// mirroring the partitioning of the vanilla Anvil format.
+// Each region file starts with a header offset table (packed BlockPos -> offset/length) followed by
+// the individually encoded layout of every chest (LayoutCodec), so a storage hall of thousands of chests
+// only produces a handful of files on disk.
+// At most maxLoadedRegions regions stay in memory; the least recently used ones are dropped as soon as
+// everything they hold is on disk, and whole-world scans read each file without keeping it.
+@Environment(EnvType.CLIENT)
+public class RegionFileStore {
+
+    private static final int MAGIC = 0x43535247; // "CSRG"
+    private static final int FORMAT_VERSION = 1;
+    private static final String REGION_EXTENSION = ".csr";
+    private static final String LEGACY_EXTENSION = ".dat";
+    private static final String LEGACY_ENTITY_PREFIX = "entity_";
+
+    // 32 chunks * 16 blocks = 512 blocks per region side.
+    private static final int REGION_SHIFT = 9;
+
+    // Header: magic + version + entry count, then one (long pos, int offset, int length) row per entry.
+    private static final int HEADER_SIZE = 12;
+    private static final int TABLE_ROW_SIZE = 16;
+
+    private final Path regionDir;
+    private final WriteBehindQueue writer;
+    private final StorageMetrics metrics;
+    // Keyed by RegionKeys.encode(dimension slot, regionX, regionZ), least recently used first.
+    private final Long2ObjectLinkedOpenHashMap<Region> loadedRegions = new Long2ObjectLinkedOpenHashMap<>();
+    private final int maxLoadedRegions;
+    // Small integer per dimension so region keys stay primitive; sanitized once per dimension id.
+    private final Map<String, Integer> dimensionSlots = new HashMap<>();
+    private final Map<String, Integer> safeDimensionSlots = new HashMap<>();
+    private final PositionIndex index = new PositionIndex();
+    // Regions changed in memory whose file has not been queued for writing yet.
+    private final Set<Region> stagedRegions = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Region files being read in the background by prefetch(), and the keys of those already read.
+    private final Long2ObjectOpenHashMap<CompletableFuture<Region>> prefetching = new Long2ObjectOpenHashMap<>();
+    private final ConcurrentLinkedQueue<Long> prefetched = new ConcurrentLinkedQueue<>();
+
+    public RegionFileStore(Path regionDir, WriteBehindQueue writer, StorageMetrics metrics, int maxLoadedRegions) {
+        this.regionDir = regionDir;
+        this.writer = writer;
+        this.metrics = metrics;
+        this.maxLoadedRegions = Math.max(1, maxLoadedRegions);
+    }
+
+    public PositionIndex getIndex() {
+        return index;
+    }
+
+    // Answered from the position index only: no region is loaded and no file is touched.
+    public boolean contains(String dimensionId, BlockPos pos) {
+        return contains(dimensionId, pos.asLong());
+    }
+
+    public boolean contains(String dimensionId, long pos) {
+        return index.contains(dimensionId, pos);
+    }
+
+    // Encoded layout (see LayoutCodec) stored for the position, or null.
+    public byte[] read(String dimensionId, BlockPos pos) {
+        return read(dimensionId, pos.asLong());
+    }
+
+    public byte[] read(String dimensionId, long pos) {
+        Region region = getRegion(dimensionId, pos);
+        byte[] payload;
+        synchronized (region) {
+            payload = region.entries.get(pos);
+        }
+        if (payload == null) {
+            // El índice decía que había datos pero la región no los tiene (borrado externo): se corrige
+            index.remove(dimensionId, pos);
+        }
+        return payload;
+    }
+
+    public void write(String dimensionId, BlockPos pos, byte[] payload) {
+        write(dimensionId, pos.asLong(), payload);
+    }
+
+    public void write(String dimensionId, long pos, byte[] payload) {
+        scheduleSave(put(dimensionId, pos, payload));
+    }
+
+    // Like write(), but the region file is only rewritten by the next flushStaged(). The caller must keep the
+    // change durable by other means until then (the edit journal).
+    public void stageWrite(String dimensionId, long pos, byte[] payload) {
+        stagedRegions.add(put(dimensionId, pos, payload));
+    }
+
+    private Region put(String dimensionId, long pos, byte[] payload) {
+        Region region = getRegion(dimensionId, pos);
+        synchronized (region) {
+            region.entries.put(pos, payload);
+        }
+        index.add(dimensionId, pos);
+        return region;
+    }
+
+    public void delete(String dimensionId, BlockPos pos) {
+        delete(dimensionId, pos.asLong());
+    }
+
+    public void delete(String dimensionId, long pos) {
+        Region region = remove(dimensionId, pos);
+        if (region != null) scheduleSave(region);
+    }
+
+    public void stageDelete(String dimensionId, long pos) {
+        Region region = remove(dimensionId, pos);
+        if (region != null) stagedRegions.add(region);
+    }
+
+    private Region remove(String dimensionId, long pos) {
+        if (!index.contains(dimensionId, pos)) return null;
+        index.remove(dimensionId, pos);
+        Region region = getRegion(dimensionId, pos);
+        synchronized (region) {
+            return region.entries.remove(pos) != null ? region : null;
+        }
+    }
+
+    // Queues one write per region touched by stageWrite()/stageDelete() since the last call.
+    public void flushStaged() {
+        for (Region region : stagedRegions) {
+            scheduleSave(region);
+        }
+        stagedRegions.clear();
+    }
+
+    // --- PRECARGA ---
+
+    // Starts reading the region file that holds 'pos' on the given executor, unless it is already loaded or
+    // being read. The region becomes visible through installPrefetched(); a read of that region before then
+    // waits for the background load instead of reading the file a second time. Returns true if a read started.
+    public boolean prefetch(String dimensionId, long pos, Executor executor) {
+        int slot = dimensionSlot(dimensionId);
+        int regionX = BlockPos.unpackLongX(pos) >> REGION_SHIFT;
+        int regionZ = BlockPos.unpackLongZ(pos) >> REGION_SHIFT;
+        long key = RegionKeys.encode(slot, regionX, regionZ);
+        if (loadedRegions.get(key) != null || prefetching.get(key) != null) return false;
+
+        Path file = regionDir.resolve(safeDimensionName(slot) + "." + regionX + "." + regionZ + REGION_EXTENSION);
+        CompletableFuture<Region> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> loadRegion(file), executor);
+        } catch (RejectedExecutionException e) {
+            // El ejecutor ya se ha cerrado (fin de sesión): la región se leerá al usarse
+            return false;
+        }
+        prefetching.put(key, future);
+        future.whenComplete((region, error) -> prefetched.add(key));
+        return true;
+    }
+
+    // Adopts the regions whose background read has finished. Must run on the thread that owns the store.
+    // A read that failed is dropped: the region is then read synchronously the first time it is used.
+    public int installPrefetched() {
+        int installed = 0;
+        Long key;
+        while ((key = prefetched.poll()) != null) {
+            CompletableFuture<Region> future = prefetching.remove(key);
+            if (future == null) continue;
+            Region region = prefetchResult(future);
+            if (region != null && loadedRegions.get(key) == null) {
+                loadedRegions.put(key, region);
+                evictCleanRegions(key);
+                installed++;
+            }
+        }
+        return installed;
+    }
+
+    public boolean isLoaded(String dimensionId, long pos) {
+        return loadedRegions.get(regionKey(dimensionId, pos)) != null;
+    }
+
+    public boolean isPrefetching(String dimensionId, long pos) {
+        return prefetching.get(regionKey(dimensionId, pos)) != null;
+    }
+
+    private long regionKey(String dimensionId, long pos) {
+        return RegionKeys.encode(dimensionSlot(dimensionId), BlockPos.unpackLongX(pos) >> REGION_SHIFT, BlockPos.unpackLongZ(pos) >> REGION_SHIFT);
+    }
+
+    // Waits for a background read; null (and a log line) when it failed.
+    private static Region prefetchResult(CompletableFuture<Region> future) {
+        return future.handle((region, error) -> {
+            if (error != null) {
+                System.err.println("[ChestSeparators] Region prefetch failed: " + error.getMessage());
+                return null;
+            }
+            return region;
+        }).join();
+    }
+
+    // --- MIGRACIÓN DESDE ARCHIVOS SUELTOS ---
+
+    // Moves every legacy "<dim>_<x>_<y>_<z>.dat" file from the old per-chest layout into the region files.
+    // Each touched region is written once, and the legacy files are only deleted after that write succeeded.
+    public int migrateLegacyFiles(Path legacyDir) {
+        metrics.countFileCheck();
+        if (!Files.isDirectory(legacyDir)) return 0;
+
+        // Se agrupan por región y cada región se escribe antes de pasar a la siguiente, así nunca hay más
+        // de una con cambios sin guardar
+        Map<Path, List<Path>> byRegion = new LinkedHashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacyDir, "*" + LEGACY_EXTENSION)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(LEGACY_ENTITY_PREFIX)) continue;
+
+                BlockPos pos = parseLegacyPos(name);
+                if (pos == null) continue;
+                String safeDim = name.substring(0, legacyDimensionEnd(name));
+                Path regionFile = regionDir.resolve(safeDim + "." + (pos.getX() >> REGION_SHIFT) + "." + (pos.getZ() >> REGION_SHIFT) + REGION_EXTENSION);
+                byRegion.computeIfAbsent(regionFile, r -> new ArrayList<>()).add(file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+
+        int count = 0;
+        for (List<Path> files : byRegion.values()) {
+            Region region = null;
+            List<Path> moved = new ArrayList<>();
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    byte[] payload = LayoutCodec.toCompact(Files.readAllBytes(file));
+                    long pos = parseLegacyPos(name).asLong();
+                    region = getRegionBySafeName(name.substring(0, legacyDimensionEnd(name)), pos);
+                    synchronized (region) {
+                        region.entries.put(pos, payload);
+                    }
+                    moved.add(file);
+                } catch (IOException e) {
+                    System.err.println("[ChestSeparators] Skipping unreadable legacy file " + name + ": " + e.getMessage());
+                }
+            }
+            if (region == null || !saveRegionNow(region)) continue;
+            for (Path file : moved) {
+                try {
+                    Files.deleteIfExists(file);
+                    count++;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return count;
+    }
+
+    // Legacy names are "<safeDim>_<x>_<y>_<z>.dat"; the dimension may itself contain underscores,
+    // so the coordinates are parsed from the end of the name.
+    private static BlockPos parseLegacyPos(String fileName) {
+        String base = fileName.substring(0, fileName.length() - LEGACY_EXTENSION.length());
+        String[] parts = base.split("_");
+        if (parts.length < 4) return null;
+        try {
+            int x = Integer.parseInt(parts[parts.length - 3]);
+            int y = Integer.parseInt(parts[parts.length - 2]);
+            int z = Integer.parseInt(parts[parts.length - 1]);
+            return new BlockPos(x, y, z);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int legacyDimensionEnd(String fileName) {
+        int end = fileName.length() - LEGACY_EXTENSION.length();
+        for (int i = 0; i < 3; i++) {
+            end = fileName.lastIndexOf('_', end - 1);
+        }
+        return end;
+    }
+
+    // --- CONVERSIÓN DE FORMATO ---
+
+    // Rewrites every entry still stored in the legacy gzip NBT format in the compact one.
+    // Each region with converted entries is written once; regions that are not loaded are converted and
+    // written one at a time without staying in memory. Returns the number of converted entries.
+    public int convertToCompactFormat() {
+        metrics.countFileCheck();
+        if (!Files.isDirectory(regionDir)) return 0;
+
+        int converted = 0;
+        metrics.countDirectoryScan();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(regionDir, "*" + REGION_EXTENSION)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                String safeDim = parseRegionDimension(fileName);
+                if (safeDim == null) continue;
+                int[] coords = parseRegionCoords(fileName, safeDim);
+                if (coords == null) continue;
+
+                Region loaded = loadedRegions.get(RegionKeys.encode(safeDimensionSlot(safeDim), coords[0], coords[1]));
+                Region region = loaded != null ? loaded : loadRegion(file);
+                int regionConverted = 0;
+                synchronized (region) {
+                    for (Map.Entry<Long, byte[]> entry : region.entries.entrySet()) {
+                        if (LayoutCodec.isCompact(entry.getValue())) continue;
+                        try {
+                            entry.setValue(LayoutCodec.toCompact(entry.getValue()));
+                            regionConverted++;
+                        } catch (IOException e) {
+                            System.err.println("[ChestSeparators] Skipping unreadable entry in " + fileName + ": " + e.getMessage());
+                        }
+                    }
+                }
+                if (regionConverted == 0) continue;
+                if (loaded != null) {
+                    scheduleSave(region);
+                } else if (!saveRegionNow(region)) {
+                    continue;
+                }
+                converted += regionConverted;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return converted;
+    }
+
+    // --- ÍNDICE ---
+
+    // Reads every region file of the world once and records which positions hold a layout.
+    public void buildIndex() {
+        index.clear();
+        metrics.countFileCheck();
+        if (!Files.isDirectory(regionDir)) return;
+
+        metrics.countDirectoryScan();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(regionDir, "*" + REGION_EXTENSION)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                String safeDim = parseRegionDimension(fileName);
+                if (safeDim == null) continue;
+                int[] coords = parseRegionCoords(fileName, safeDim);
+                if (coords == null) continue;
+
+                Region region = scanRegion(safeDim, coords, file);
+                synchronized (region) {
+                    for (long pos : region.entries.keySet()) {
+                        index.addBySafeDimension(safeDim, pos);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Hands the payload of every entry of every region to 'visitor': the loaded ones first (a region created by
+    // a journal replay has no file yet), then the files of the rest, each read for this pass only.
+    public void forEachPayload(Consumer<byte[]> visitor) {
+        Set<Path> visited = new HashSet<>();
+        for (Region region : loadedRegions.values()) {
+            visited.add(region.file);
+            visitPayloads(region, visitor);
+        }
+
+        metrics.countFileCheck();
+        if (!Files.isDirectory(regionDir)) return;
+
+        metrics.countDirectoryScan();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(regionDir, "*" + REGION_EXTENSION)) {
+            for (Path file : stream) {
+                if (visited.contains(file)) continue;
+                String fileName = file.getFileName().toString();
+                String safeDim = parseRegionDimension(fileName);
+                if (safeDim == null || parseRegionCoords(fileName, safeDim) == null) continue;
+
+                visitPayloads(loadRegion(file), visitor);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void visitPayloads(Region region, Consumer<byte[]> visitor) {
+        synchronized (region) {
+            for (byte[] payload : region.entries.values()) {
+                visitor.accept(payload);
+            }
+        }
+    }
+
+    // Loaded region (it may hold changes not yet on disk) or, otherwise, the file read for this pass only.
+    private Region scanRegion(String safeDim, int[] coords, Path file) {
+        Region loaded = loadedRegions.get(RegionKeys.encode(safeDimensionSlot(safeDim), coords[0], coords[1]));
+        return loaded != null ? loaded : loadRegion(file);
+    }
+
+    // Restores the index saved at the end of the previous session. Returns false when it is missing
+    // or no longer matches the region files on disk, in which case buildIndex() must be used.
+    public boolean loadIndex(Path indexFile) {
+        metrics.countFileCheck();
+        if (!Files.exists(indexFile)) return false;
+        try {
+            metrics.countFileRead();
+            return index.deserialize(Files.readAllBytes(indexFile), computeFingerprint());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Must run after the writer has been flushed, so the fingerprint describes the final region files.
+    public void saveIndex(Path indexFile) {
+        try {
+            WriteBehindQueue.commitAtomically(indexFile, index.serialize(computeFingerprint()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Name, size and modification time of every region file, folded into one value.
+    private long computeFingerprint() {
+        long fingerprint = 1;
+        metrics.countFileCheck();
+        if (!Files.isDirectory(regionDir)) return fingerprint;
+
+        List<String> rows = new ArrayList<>();
+        metrics.countDirectoryScan();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(regionDir, "*" + REGION_EXTENSION)) {
+            for (Path file : stream) {
+                metrics.countFileCheck();
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                rows.add(file.getFileName() + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        Collections.sort(rows);
+        for (String row : rows) {
+            fingerprint = 31 * fingerprint + row.hashCode();
+        }
+        return fingerprint * 31 + rows.size();
+    }
+
+    // Region names are "<safeDim>.<regionX>.<regionZ>.csr"; the dimension may contain dots itself.
+    private static String parseRegionDimension(String fileName) {
+        String base = fileName.substring(0, fileName.length() - REGION_EXTENSION.length());
+        int zDot = base.lastIndexOf('.');
+        if (zDot <= 0) return null;
+        int xDot = base.lastIndexOf('.', zDot - 1);
+        if (xDot <= 0) return null;
+        return base.substring(0, xDot);
+    }
+
+    // Region names are "<safeDim>.<regionX>.<regionZ>.csr".
+    private static int[] parseRegionCoords(String fileName, String safeDim) {
+        String base = fileName.substring(safeDim.length() + 1, fileName.length() - REGION_EXTENSION.length());
+        int dot = base.indexOf('.');
+        if (dot <= 0) return null;
+        try {
+            return new int[] { Integer.parseInt(base.substring(0, dot)), Integer.parseInt(base.substring(dot + 1)) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // --- REGIONES ---
+
+    // Hot path (interact / break / open): primitive key lookup, the file name is only built on a miss.
+    private Region getRegion(String dimensionId, long pos) {
+        return getRegion(dimensionSlot(dimensionId), BlockPos.unpackLongX(pos) >> REGION_SHIFT, BlockPos.unpackLongZ(pos) >> REGION_SHIFT, null);
+    }
+
+    private int dimensionSlot(String dimensionId) {
+        Integer slot = dimensionSlots.get(dimensionId);
+        if (slot == null) {
+            slot = safeDimensionSlot(toSafeDimension(dimensionId));
+            dimensionSlots.put(dimensionId, slot);
+        }
+        return slot;
+    }
+
+    private Region getRegionBySafeName(String safeDim, long pos) {
+        return getRegion(safeDimensionSlot(safeDim), BlockPos.unpackLongX(pos) >> REGION_SHIFT,
+                BlockPos.unpackLongZ(pos) >> REGION_SHIFT, safeDim);
+    }
+
+    private Region getRegion(int dimensionSlot, int regionX, int regionZ, String safeDim) {
+        long key = RegionKeys.encode(dimensionSlot, regionX, regionZ);
+        Region region = loadedRegions.getAndMoveToLast(key);
+        if (region == null) {
+            CompletableFuture<Region> inFlight = prefetching.remove(key);
+            if (inFlight != null) {
+                // Ya se está leyendo en segundo plano: se espera a esa lectura
+                region = prefetchResult(inFlight);
+            }
+            if (region == null) {
+                if (safeDim == null) safeDim = safeDimensionName(dimensionSlot);
+                region = loadRegion(regionDir.resolve(safeDim + "." + regionX + "." + regionZ + REGION_EXTENSION));
+            }
+            loadedRegions.put(key, region);
+            evictCleanRegions(key);
+        }
+        return region;
+    }
+
+    // Drops the least recently used regions over the limit whose content is already on disk: neither staged
+    // nor waiting in the writer. A dropped region is read again from its file when needed. 'keep' is the region
+    // just installed: the caller is about to use it, and a change made to an evicted instance would be lost.
+    private void evictCleanRegions(long keep) {
+        if (loadedRegions.size() <= maxLoadedRegions) return;
+        LongIterator it = loadedRegions.keySet().iterator();
+        while (loadedRegions.size() > maxLoadedRegions && it.hasNext()) {
+            long key = it.nextLong();
+            if (key == keep) continue;
+            Region region = loadedRegions.get(key);
+            if (stagedRegions.contains(region) || writer.isQueued(region.file)) continue;
+            it.remove();
+        }
+    }
+
+    private int safeDimensionSlot(String safeDim) {
+        Integer slot = safeDimensionSlots.get(safeDim);
+        if (slot == null) {
+            slot = safeDimensionSlots.size();
+            safeDimensionSlots.put(safeDim, slot);
+        }
+        return slot;
+    }
+
+    private String safeDimensionName(int slot) {
+        for (Map.Entry<String, Integer> entry : safeDimensionSlots.entrySet()) {
+            if (entry.getValue() == slot) return entry.getKey();
+        }
+        throw new IllegalStateException("Unknown dimension slot " + slot);
+    }
+
+    static String toSafeDimension(String dimensionId) {
+        return dimensionId.replace(':', '_').replace('/', '_');
+    }
+
+    private Region loadRegion(Path file) {
+        Region region = new Region(file);
+        metrics.countRegionLoad();
+        metrics.countFileCheck();
+        if (!Files.exists(file)) return region;
+
+        try {
+            metrics.countFileRead();
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC) {
+                System.err.println("[ChestSeparators] Ignoring invalid region file " + file.getFileName());
+                return region;
+            }
+            int version = buf.getInt();
+            if (version != FORMAT_VERSION) {
+                System.err.println("[ChestSeparators] Unsupported region version " + version + " in " + file.getFileName());
+                return region;
+            }
+            int count = buf.getInt();
+            if (count < 0 || HEADER_SIZE + (long) count * TABLE_ROW_SIZE > buf.limit()) {
+                System.err.println("[ChestSeparators] Truncated region header in " + file.getFileName());
+                return region;
+            }
+
+            byte[] data = buf.array();
+            for (int i = 0; i < count; i++) {
+                long pos = buf.getLong();
+                int offset = buf.getInt();
+                int length = buf.getInt();
+                if (offset < 0 || length < 0 || (long) offset + length > data.length) continue;
+
+                byte[] payload = new byte[length];
+                System.arraycopy(data, offset, payload, 0, length);
+                region.entries.put(pos, payload);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return region;
+    }
+
+    // The region is serialized on the I/O thread, so consecutive edits inside the coalescing window
+    // produce one write containing all of them.
+    private void scheduleSave(Region region) {
+        writer.enqueue(region.file, () -> {
+            try {
+                return serialize(region);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private boolean saveRegionNow(Region region) {
+        try {
+            byte[] data = serialize(region);
+            if (data == null) {
+                Files.deleteIfExists(region.file);
+            } else {
+                WriteBehindQueue.commitAtomically(region.file, data);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Returns null for an empty region so that the writer deletes its file.
+    private static byte[] serialize(Region region) throws IOException {
+        synchronized (region) {
+            return serializeLocked(region);
+        }
+    }
+
+    private static byte[] serializeLocked(Region region) throws IOException {
+        if (region.entries.isEmpty()) return null;
+
+        int count = region.entries.size();
+        int offset = HEADER_SIZE + count * TABLE_ROW_SIZE;
+        int total = offset;
+        for (byte[] payload : region.entries.values()) {
+            total += payload.length;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(total);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(count);
+        for (Map.Entry<Long, byte[]> entry : region.entries.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(offset);
+            out.writeInt(entry.getValue().length);
+            offset += entry.getValue().length;
+        }
+        for (byte[] payload : region.entries.values()) {
+            out.write(payload);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static final class Region {
+        private final Path file;
+        // Sorted so that the on-disk table is deterministic between saves.
+        private final TreeMap<Long, byte[]> entries = new TreeMap<>();
+
+        private Region(Path file) {
+            this.file = file;
+        }
+    }
+}
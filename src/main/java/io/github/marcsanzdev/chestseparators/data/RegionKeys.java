@@ -0,0 +1,19 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+// Packs (dimension slot, region X, region Z) into one long, so finding the region of a chest
+// needs neither a formatted file name nor a Path. The file name is only built when a region is first loaded.
+@Environment(EnvType.CLIENT)
+final class RegionKeys {
+
+    private static final long COORD_MASK = 0xFFFFFFL;
+
+    private RegionKeys() {}
+
+    // 16 bits of dimension slot, 24 bits per region coordinate (±8M regions, far past the world border).
+    static long encode(int dimensionSlot, int regionX, int regionZ) {
+        return ((long) dimensionSlot << 48) | ((regionX & COORD_MASK) << 24) | (regionZ & COORD_MASK);
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+// Persistence backend for one world session.
+// ChestConfigManager only keeps the layout being edited and the clipboard; every read and write of stored
+// layouts goes through this interface, so the backend (and whatever caching or write-behind it does)
+// can be driven on its own against a temporary directory.
+@Environment(EnvType.CLIENT)
+public interface SeparatorStorage {
+
+    StorageContext getContext();
+
+    // File system work done on the caller's thread since the session opened.
+    StorageMetrics getMetrics();
+
+    boolean contains(ChestKey key);
+
+    // Packed positions of every block container of a dimension that has a stored layout.
+    long[] getStoredPositions(String dimensionId);
+
+    // Same, restricted to one chunk.
+    long[] getStoredPositionsInChunk(String dimensionId, int chunkX, int chunkZ);
+
+    // Asks for the layout of 'key' to be made a memory hit: its data is read in the background and decoded
+    // into the cache by a later pollPrefetches(). Does nothing when it is already cached.
+    void prefetch(ChestKey key);
+
+    // Finishes up to 'maxLayouts' prefetches whose data has been read. Runs on the caller's thread.
+    int pollPrefetches(int maxLayouts);
+
+    // Replaces the content of 'into' with the stored layout (left empty when nothing is stored).
+    void load(ChestKey key, ChestLayout into);
+
+    // Commits 'layout' as the stored state of the key; an empty layout removes the entry.
+    void save(ChestKey key, ChestLayout layout);
+
+    // Journals a single edge edit of the layout being edited (edgeMask: 1 << ChestLayout.EDGE_*).
+    void recordEdges(ChestKey key, int slot, int edgeMask, int colorRef);
+
+    // Journals a whole-layout replacement (paste).
+    void recordSnapshot(ChestKey key, ChestLayout layout);
+
+    void delete(ChestKey key);
+
+    // Block containers only: a double chest whose data has to follow the half that survives.
+    void move(ChestKey from, ChestKey to);
+
+    // Drops every slot above maxSlotIndex.
+    void truncate(ChestKey key, int maxSlotIndex);
+
+    // Custom colours of the world. Read once per session; saves are asynchronous.
+    int[] loadPalette();
+
+    void savePalette(int[] colors);
+
+    int getPendingWriteCount();
+
+    // Blocks until every pending write is on disk.
+    void flush();
+
+    // Starts writing pending data without waiting for it.
+    void flushAsync();
+
+    // Ends the session: pending writes and session metadata (position index) are persisted.
+    void close();
+}
@@ -0,0 +1,22 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.nio.file.Path;
+
+// Where one world's separator data lives, resolved once when the world is joined.
+// worldDir is "<configRoot>/<worldKey>"; worldKey is the sanitized world name ("sp_<level>" / "mp_<address>").
+// Nothing here depends on a running client, so the storage layer can be pointed at any directory.
+@Environment(EnvType.CLIENT)
+public record StorageContext(Path worldDir, String worldKey) {
+
+    public static StorageContext of(Path configRoot, String worldName) {
+        String key = sanitize(worldName);
+        return new StorageContext(configRoot.resolve(key), key);
+    }
+
+    static String sanitize(String worldName) {
+        return worldName.replaceAll("[^a-zA-Z0-9_\\-]", "_");
+    }
+}
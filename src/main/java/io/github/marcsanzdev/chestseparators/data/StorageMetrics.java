@@ -0,0 +1,96 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters of the storage work done on the caller's thread (interact, break and screen open paths).
+// Writes committed by the background writer are not counted here: they never block an interaction.
+@Environment(EnvType.CLIENT)
+public final class StorageMetrics {
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong fileChecks = new AtomicLong();
+    private final AtomicLong fileReads = new AtomicLong();
+    private final AtomicLong directoryCreates = new AtomicLong();
+    private final AtomicLong directoryScans = new AtomicLong();
+    private final AtomicLong regionLoads = new AtomicLong();
+
+    // One public storage call (contains / load / save / delete / move / truncate).
+    void countOperation() {
+        operations.incrementAndGet();
+    }
+
+    // Files.exists / isDirectory / readAttributes.
+    void countFileCheck() {
+        fileChecks.incrementAndGet();
+    }
+
+    void countFileRead() {
+        fileReads.incrementAndGet();
+    }
+
+    void countDirectoryCreate() {
+        directoryCreates.incrementAndGet();
+    }
+
+    void countDirectoryScan() {
+        directoryScans.incrementAndGet();
+    }
+
+    void countRegionLoad() {
+        regionLoads.incrementAndGet();
+    }
+
+    public long getOperations() {
+        return operations.get();
+    }
+
+    public long getFileChecks() {
+        return fileChecks.get();
+    }
+
+    public long getFileReads() {
+        return fileReads.get();
+    }
+
+    public long getDirectoryCreates() {
+        return directoryCreates.get();
+    }
+
+    public long getDirectoryScans() {
+        return directoryScans.get();
+    }
+
+    public long getRegionLoads() {
+        return regionLoads.get();
+    }
+
+    public long getFileSystemCalls() {
+        return fileChecks.get() + fileReads.get() + directoryCreates.get() + directoryScans.get();
+    }
+
+    public double getFileSystemCallsPerOperation() {
+        long ops = operations.get();
+        return ops == 0 ? 0.0 : (double) getFileSystemCalls() / ops;
+    }
+
+    public void reset() {
+        operations.set(0);
+        fileChecks.set(0);
+        fileReads.set(0);
+        directoryCreates.set(0);
+        directoryScans.set(0);
+        regionLoads.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "operations=" + getOperations()
+                + " fsCalls=" + getFileSystemCalls()
+                + " (checks=" + getFileChecks() + " reads=" + getFileReads()
+                + " mkdirs=" + getDirectoryCreates() + " scans=" + getDirectoryScans() + ")"
+                + " regionLoads=" + getRegionLoads();
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import com.google.common.hash.Hashing;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Content-addressed store of the layouts shared by block containers.
+// A layout is hashed over its encoded bytes (LayoutCodec output is canonical for a given content) and stored
+// once in the world's template file; region entries then hold a 9-byte reference instead of the full layout.
+// Every template counts the entries that reference it and is dropped when the last one goes away. The decoded
+// layout of a template is kept as one shared, read-only instance, so the layout cache holds a single copy for
+// a whole storage hall painted with the same paste.
+@Environment(EnvType.CLIENT)
+public class TemplateStore {
+
+    private static final int MAGIC = 0x43535450; // "CSTP"
+    private static final int FORMAT_VERSION = 1;
+
+    // Por debajo de este tamaño la referencia (9 bytes) no compensa: el layout se guarda en la entrada
+    private static final int MIN_SHARED_BYTES = 16;
+
+    private final Path file;
+    private final WriteBehindQueue writer;
+    private final StorageMetrics metrics;
+    private final ColorTable colorTable;
+    private final Long2ObjectOpenHashMap<Template> templates = new Long2ObjectOpenHashMap<>();
+    // Hay cambios de plantillas o contadores que aún no se han puesto en cola
+    private boolean dirty;
+
+    public TemplateStore(Path file, WriteBehindQueue writer, StorageMetrics metrics, ColorTable colorTable) {
+        this.file = file;
+        this.writer = writer;
+        this.metrics = metrics;
+        this.colorTable = colorTable;
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    // Adds one reference to the template holding 'encoded' (created on first use) and returns the payload to
+    // store in the entry: a template reference, or 'encoded' itself when sharing it is not worth it.
+    public byte[] acquire(byte[] encoded, ChestLayout layout) {
+        if (encoded.length <= MIN_SHARED_BYTES) return encoded;
+        long hash = hash(encoded);
+        Template template = templates.get(hash);
+        if (template == null) {
+            template = new Template(hash, encoded);
+            template.decoded = layout.copy();
+            templates.put(hash, template);
+        } else if (!Arrays.equals(template.payload, encoded)) {
+            // Colisión de hash: esta entrada se queda con su copia
+            return encoded;
+        }
+        template.refCount++;
+        dirty = true;
+        return LayoutCodec.templateRef(hash);
+    }
+
+    // Drops the reference held by an entry payload; plain payloads hold none.
+    public void release(byte[] payload) {
+        if (payload == null || !LayoutCodec.isTemplateRef(payload)) return;
+        long hash = LayoutCodec.templateHash(payload);
+        Template template = templates.get(hash);
+        if (template == null) return;
+        if (--template.refCount <= 0) {
+            templates.remove(hash);
+        }
+        dirty = true;
+    }
+
+    // Shared layout behind a template reference, or null when 'payload' is not one. Callers must not modify it.
+    public ChestLayout resolve(byte[] payload) {
+        if (payload == null || !LayoutCodec.isTemplateRef(payload)) return null;
+        long hash = LayoutCodec.templateHash(payload);
+        Template template = templates.get(hash);
+        if (template == null) {
+            System.err.println("[ChestSeparators] Missing layout template " + Long.toHexString(hash));
+            return new ChestLayout(0);
+        }
+        if (template.decoded == null) {
+            ChestLayout layout = new ChestLayout(0);
+            try {
+                LayoutCodec.decode(template.payload, layout, colorTable);
+            } catch (IOException | RuntimeException e) {
+                layout.clear();
+                System.err.println("[ChestSeparators] Unreadable layout template " + Long.toHexString(hash) + ": " + e.getMessage());
+            }
+            template.decoded = layout;
+        }
+        return template.decoded;
+    }
+
+    // Rebuilds every reference count from the entries that exist (after replaying a journal left by a crash,
+    // when the counts saved in the file may not match the region files).
+    public void recount(Consumer<Consumer<byte[]>> entries) {
+        for (Template template : templates.values()) {
+            template.refCount = 0;
+        }
+        entries.accept(payload -> {
+            if (!LayoutCodec.isTemplateRef(payload)) return;
+            Template template = templates.get(LayoutCodec.templateHash(payload));
+            if (template != null) template.refCount++;
+        });
+        templates.values().removeIf(template -> template.refCount <= 0);
+        dirty = true;
+    }
+
+    // Frees the shared decoded instances; the templates themselves stay loaded.
+    public void clearDecoded() {
+        for (Template template : templates.values()) {
+            template.decoded = null;
+        }
+    }
+
+    // --- PERSISTENCIA ---
+
+    public void load() {
+        templates.clear();
+        metrics.countFileCheck();
+        if (!Files.exists(file)) return;
+        try {
+            metrics.countFileRead();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                System.err.println("[ChestSeparators] Ignoring unknown template file " + file.getFileName());
+                return;
+            }
+            int count = VarInts.readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                long hash = in.readLong();
+                int refCount = VarInts.readVarInt(in);
+                byte[] payload = new byte[VarInts.readVarInt(in)];
+                in.readFully(payload);
+                Template template = new Template(hash, payload);
+                template.refCount = refCount;
+                templates.put(hash, template);
+            }
+        } catch (IOException e) {
+            System.err.println("[ChestSeparators] Could not read template file " + file.getFileName() + ": " + e.getMessage());
+        }
+        dirty = false;
+    }
+
+    // Queues the template file when something changed since the last call; an empty store deletes it.
+    public void flush() {
+        if (!dirty) return;
+        dirty = false;
+        if (templates.size() == 0) {
+            writer.enqueue(file, () -> null);
+            return;
+        }
+        byte[] data = serialize();
+        writer.enqueue(file, () -> data);
+    }
+
+    private byte[] serialize() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + templates.size() * 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            VarInts.writeVarInt(out, templates.size());
+            for (Template template : templates.values()) {
+                out.writeLong(template.hash);
+                VarInts.writeVarInt(out, template.refCount);
+                VarInts.writeVarInt(out, template.payload.length);
+                out.write(template.payload);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream no lanza IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static long hash(byte[] encoded) {
+        return Hashing.murmur3_128().hashBytes(encoded).asLong();
+    }
+
+    private static final class Template {
+        private final long hash;
+        private final byte[] payload;
+        private int refCount;
+        // Instancia compartida por todas las entradas en caché; se decodifica la primera vez que se pide
+        private ChestLayout decoded;
+
+        private Template(long hash, byte[] payload) {
+            this.hash = hash;
+            this.payload = payload;
+        }
+    }
+}
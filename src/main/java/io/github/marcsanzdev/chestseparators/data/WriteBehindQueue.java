@@ -0,0 +1,186 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Background writer that takes disk I/O off the render thread.
+// Writes are keyed by target file: several edits to the same file inside the coalescing window
+// collapse into a single write of the latest payload. Every write is committed through a temporary
+// sibling file that is forced to disk before an atomic rename, and the rename itself is made durable by
+// syncing the directory, so a crash never leaves a half-written file behind. A write that fails stays
+// queued and is retried.
+@Environment(EnvType.CLIENT)
+public class WriteBehindQueue {
+
+    private static final long COALESCE_WINDOW_MS = 250;
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChestSeparators-IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Latest payload per target; a supplier returning null means "delete the file". Guarded by this.
+    private final Map<Path, Supplier<byte[]>> pending = new LinkedHashMap<>();
+    private int inFlight = 0;
+    // Destino que el hilo de E/S está escribiendo ahora mismo, y su contenido: ya no está en 'pending' pero
+    // tampoco en disco hasta que termine
+    private Path writing;
+    private Supplier<byte[]> writingPayload;
+
+    public void enqueue(Path target, Supplier<byte[]> payload) {
+        boolean scheduled;
+        synchronized (this) {
+            scheduled = pending.put(target, payload) != null;
+        }
+        if (!scheduled) {
+            executor.schedule(() -> drain(target), COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Read-your-writes support: the payload that will end up on disk for this target, if one is queued or
+    // being written.
+    public synchronized Supplier<byte[]> getPending(Path target) {
+        Supplier<byte[]> payload = pending.get(target);
+        if (payload == null && target.equals(writing)) return writingPayload;
+        return payload;
+    }
+
+    // Whether the target still has a write queued or in progress, i.e. its file may not match memory yet.
+    public synchronized boolean isQueued(Path target) {
+        return pending.containsKey(target) || target.equals(writing);
+    }
+
+    public synchronized int getPendingWriteCount() {
+        return pending.size() + inFlight;
+    }
+
+    // Runs a task on the I/O thread after every task submitted before it (used by the edit journal).
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    // Starts writing everything that is queued without waiting for the coalescing window.
+    public void flushAsync() {
+        executor.execute(this::drainAll);
+    }
+
+    // Writes everything that is queued, then runs the task on the I/O thread if all of those writes succeeded,
+    // or onFailure otherwise. Used to drop data that is only safe to delete once its replacement is on disk
+    // (journal segments).
+    public void runAfterPendingWrites(Runnable task, Runnable onFailure) {
+        executor.execute(() -> {
+            if (drainAll()) task.run();
+            else onFailure.run();
+        });
+    }
+
+    // Blocks until every queued write has reached the disk.
+    public void flush() {
+        try {
+            executor.submit(this::drainAll).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    private boolean drainAll() {
+        List<Path> targets;
+        synchronized (this) {
+            targets = new ArrayList<>(pending.keySet());
+        }
+        boolean ok = true;
+        for (Path target : targets) {
+            ok &= drain(target);
+        }
+        return ok;
+    }
+
+    private boolean drain(Path target) {
+        Supplier<byte[]> payload;
+        synchronized (this) {
+            payload = pending.remove(target);
+            if (payload == null) return true;
+            inFlight++;
+            writing = target;
+            writingPayload = payload;
+        }
+        try {
+            byte[] data = payload.get();
+            if (data == null) {
+                if (Files.deleteIfExists(target)) syncDirectory(target.getParent());
+            } else {
+                commitAtomically(target, data);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[ChestSeparators] Failed to write " + target.getFileName() + ": " + e.getMessage());
+            boolean retry;
+            synchronized (this) {
+                // Si mientras tanto se encoló un contenido más nuevo, ese gana y ya tiene su escritura programada
+                retry = pending.putIfAbsent(target, payload) == null;
+            }
+            if (retry) executor.schedule(() -> drain(target), RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            return false;
+        } finally {
+            synchronized (this) {
+                inFlight--;
+                writing = null;
+                writingPayload = null;
+            }
+        }
+    }
+
+    static void commitAtomically(Path target, byte[] data) throws IOException {
+        Path parent = target.getParent();
+        if (parent != null && !Files.exists(parent)) {
+            Files.createDirectories(parent);
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            // El contenido tiene que estar en disco antes de que el renombrado lo haga visible
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(parent);
+    }
+
+    // Makes renames and deletions inside the directory durable. Not every platform can open a directory
+    // (Windows cannot); there the file system already orders the rename after the data.
+    static void syncDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {}
+    }
+}
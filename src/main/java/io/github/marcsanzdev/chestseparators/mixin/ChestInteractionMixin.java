@@ -27,6 +27,7 @@ public class ChestInteractionMixin {
     @Inject(method = "interactBlock", at = @At("HEAD"))
     private void captureChestPos(ClientPlayerEntity player, Hand hand, BlockHitResult hitResult, CallbackInfoReturnable<ActionResult> cir) {
         if (hand == Hand.MAIN_HAND) {
+            ChestPosStorage.clear();
             BlockPos clickedPos = hitResult.getBlockPos();
             BlockPos finalPos = clickedPos;
 
@@ -65,7 +66,6 @@ public class ChestInteractionMixin {
             }
 
             ChestPosStorage.lastClickedPos = finalPos;
-            ChestPosStorage.isEntityOpened = false;
 
             if (MinecraftClient.getInstance().world != null) {
                 ChestPosStorage.lastClickedDimension = MinecraftClient.getInstance().world.getRegistryKey().getValue().toString();
@@ -76,8 +76,11 @@ public class ChestInteractionMixin {
     @Inject(method = "interactEntity", at = @At("HEAD"))
     private void captureEntity(PlayerEntity player, Entity entity, Hand hand, CallbackInfoReturnable<ActionResult> cir) {
         if (hand == Hand.MAIN_HAND) {
+            // Cualquier interacción (aldeanos, caballos...) olvida el objetivo anterior
+            ChestPosStorage.clear();
             if (entity instanceof VehicleInventory || entity.getClass().getName().contains("Chest")) {
                 ChestPosStorage.lastClickedEntityUUID = entity.getUuid();
+                ChestPosStorage.lastClickedEntityId = entity.getId();
                 ChestPosStorage.isEntityOpened = true;
 
                 if (MinecraftClient.getInstance().world != null) {
@@ -1,6 +1,9 @@
 package io.github.marcsanzdev.chestseparators.mixin.client;
 
 import io.github.marcsanzdev.chestseparators.client.ui.ChestSeparatorsEditor;
+import io.github.marcsanzdev.chestseparators.client.ui.ContainerAdapter;
+import io.github.marcsanzdev.chestseparators.client.ui.ContainerAdapters;
+import io.github.marcsanzdev.chestseparators.util.ChestPosStorage;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.screen.ingame.HandledScreen;
@@ -25,9 +28,10 @@ public abstract class GenericContainerScreenMixin extends Screen {
 
     @Inject(method = "init", at = @At("TAIL"))
     protected void init(CallbackInfo ci) {
-        if (!((Object)this instanceof net.minecraft.client.gui.screen.ingame.GenericContainerScreen)) return;
+        ContainerAdapter adapter = ContainerAdapters.find((HandledScreen<?>) (Object) this);
+        if (adapter == null) return;
 
-        this.editor = new ChestSeparatorsEditor((HandledScreen<?>) (Object) this);
+        this.editor = new ChestSeparatorsEditor((HandledScreen<?>) (Object) this, adapter);
         this.editor.init();
     }
 
@@ -68,7 +72,7 @@ public abstract class GenericContainerScreenMixin extends Screen {
 
     @Inject(method = "keyPressed", at = @At("HEAD"), cancellable = true)
     public void onKeyPressed(KeyInput input, CallbackInfoReturnable<Boolean> cir) {
-        if (this.editor != null && this.editor.keyPressed(input.key())) {
+        if (this.editor != null && this.editor.keyPressed(input.key(), input.modifiers())) {
             cir.setReturnValue(true);
         }
     }
@@ -78,5 +82,6 @@ public abstract class GenericContainerScreenMixin extends Screen {
         if (this.editor != null) {
             this.editor.onClose();
         }
+        ChestPosStorage.clear();
     }
 }
\ No newline at end of file
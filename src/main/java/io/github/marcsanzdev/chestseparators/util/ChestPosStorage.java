@@ -22,7 +22,21 @@ public class ChestPosStorage {
     // Required because entities lack fixed BlockPos coordinates for persistent data keying.
     public static UUID lastClickedEntityUUID;
 
+    // Network id of the same entity, used to look it up in the client world when its screen opens
+    // and check that the screen really belongs to it.
+    public static int lastClickedEntityId = -1;
+
     // Mode discriminator flag indicating whether the current UI context belongs to a dynamic entity
     // or a static block. Used by the ConfigManager to select the appropriate loading strategy.
     public static boolean isEntityOpened = false;
+
+    // Forgets the captured target. Called at every new interaction and when a container screen closes, so a
+    // screen opened later by something else (a command, a server menu) is never taken for the old target.
+    public static void clear() {
+        lastClickedPos = null;
+        lastClickedDimension = null;
+        lastClickedEntityUUID = null;
+        lastClickedEntityId = -1;
+        isEntityOpened = false;
+    }
 }
\ No newline at end of file
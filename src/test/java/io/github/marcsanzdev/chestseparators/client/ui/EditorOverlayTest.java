@@ -0,0 +1,127 @@
+package io.github.marcsanzdev.chestseparators.client.ui;
+
+import io.github.marcsanzdev.chestseparators.data.ChestConfigManager;
+import io.github.marcsanzdev.chestseparators.data.ChestLayout;
+import io.github.marcsanzdev.chestseparators.data.ColorTable;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Allocation budget of the editor's steady-state frame: the EditorOverlay calls ChestSeparatorsEditor makes
+// every frame (sidebar and slot hit-testing, saved lines, hover / drag / area previews), with the mouse
+// sweeping the sidebar and the whole container, must not allocate a single byte on this thread.
+class EditorOverlayTest {
+
+    private static final int FRAMES = 10_000;
+    private static final int WARMUP_PASSES = 5;
+
+    @Test
+    void chestFrameDoesNotAllocate() {
+        assertFrameDoesNotAllocate(54);
+    }
+
+    @Test
+    void largeContainerFrameDoesNotAllocate() {
+        assertFrameDoesNotAllocate(486);
+    }
+
+    private static void assertFrameDoesNotAllocate(int slots) {
+        EditorOverlay overlay = new EditorOverlay();
+        overlay.setSlots(slotIndices(slots), slotX(slots), slotY(slots), slots);
+        ChestLayout layout = sampleLayout(slots);
+        ColorTable table = new ColorTable();
+        CountingSink sink = new CountingSink();
+
+        // El calentamiento construye la geometría cacheada y deja compilado el frame: los cambios de nivel
+        // del JIT reservan algún objeto suelto, una regresión reserva en cada frame
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+            runFrames(overlay, layout, table, sink, slots);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // La primera llamada puede reservar memoria al inicializarse; no cuenta
+        threads.getCurrentThreadAllocatedBytes();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        sink.count = 0;
+        runFrames(overlay, layout, table, sink, slots);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(sink.count > 0, "the frames drew nothing");
+        assertEquals(0L, allocated, allocated + " bytes allocated over " + FRAMES + " frames of " + slots + " slots");
+    }
+
+    // Same sequence as ChestSeparatorsEditor.render: sidebar hover, saved lines, then the preview of the
+    // active tool. The GUI sits at (0, 0); the sidebar starts right of a 176 px wide background.
+    private static void runFrames(EditorOverlay overlay, ChestLayout layout, ColorTable table, CountingSink sink, int slots) {
+        // Hasta una fila por debajo del último slot
+        int height = 18 + (slots / 9 + 1) * 18;
+        for (int f = 0; f < FRAMES; f++) {
+            int mouseX = (f * 7) % 300;
+            int mouseY = (f * 13) % height;
+            sink.count += overlay.sidebarControlAt(180, -18, mouseX + 0.5, mouseY + 0.5) >= 0 ? 1 : 0;
+            overlay.renderSavedLines(sink, layout, table, 0, 0, 176, 166);
+
+            int position = overlay.slotAt(mouseX, mouseY);
+            switch (f & 3) {
+                case 0 -> overlay.renderHoverPreview(sink, 0, 0, mouseX, mouseY, 0x88FF0000);
+                case 1 -> {
+                    if (position >= 0) overlay.renderDragPreview(sink, 0, 0, 0, position, ChestConfigManager.ACTION_TOP, 0x88FF0000);
+                }
+                case 2 -> {
+                    if (position >= 0) {
+                        overlay.selectArea(0, position, (f & 4) == 0, null);
+                        overlay.renderAreaSelection(sink, 0, 0, 0x88FFFFFF);
+                    }
+                }
+                default -> {
+                    if (position >= 0) {
+                        overlay.selectArea(position, position, false, layout);
+                        overlay.renderAreaSelection(sink, 0, 0, 0x88FFFFFF);
+                    }
+                }
+            }
+        }
+    }
+
+    // --- AUXILIARES ---
+
+    // A line under every third row and a few coloured slot outlines.
+    private static ChestLayout sampleLayout(int slots) {
+        ChestLayout layout = new ChestLayout(slots);
+        for (int slot = 0; slot < slots; slot++) {
+            if ((slot / 9) % 3 == 2) layout.setRef(slot, ChestLayout.EDGE_BOTTOM, ColorTable.standardRef(slot % 16));
+            if (slot % 11 == 0) layout.setRef(slot, ChestLayout.EDGE_RIGHT, ColorTable.standardRef(3));
+        }
+        return layout;
+    }
+
+    private static int[] slotIndices(int slots) {
+        int[] indices = new int[slots];
+        for (int i = 0; i < slots; i++) indices[i] = i;
+        return indices;
+    }
+
+    // Vanilla chest grid: 9 columns, 18 px pitch, origin 8,18.
+    private static int[] slotX(int slots) {
+        int[] x = new int[slots];
+        for (int i = 0; i < slots; i++) x[i] = 8 + (i % 9) * 18;
+        return x;
+    }
+
+    private static int[] slotY(int slots) {
+        int[] y = new int[slots];
+        for (int i = 0; i < slots; i++) y[i] = 18 + (i / 9) * 18;
+        return y;
+    }
+
+    private static final class CountingSink implements RectSink {
+        private int count;
+
+        @Override
+        public void fill(int x1, int y1, int x2, int y2, int color) {
+            count++;
+        }
+    }
+}
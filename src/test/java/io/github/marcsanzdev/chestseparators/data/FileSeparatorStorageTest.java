@@ -0,0 +1,319 @@
+package io.github.marcsanzdev.chestseparators.data;
+
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Save / load / delete / move of the file backend on a temporary world folder. Every check is repeated on a
+// storage reopened over the same folder, so it covers what reached the disk and not only the memory caches.
+class FileSeparatorStorageTest {
+
+    private static final String DIMENSION = "minecraft:overworld";
+    private static final String[] DIMENSIONS = {DIMENSION, "minecraft:the_nether"};
+    private static final int SLOTS = 27;
+    // Bastantes para pasar el umbral de compactación del diario y tener más regiones de las que caben en memoria
+    private static final int BULK_BLOCKS = 4000;
+    private static final int BULK_ENTITIES = 1000;
+
+    @TempDir
+    Path configRoot;
+
+    private final ColorTable table = new ColorTable();
+    private StorageContext context;
+    private WriteBehindQueue writer;
+    private FileSeparatorStorage storage;
+
+    @BeforeEach
+    void open() {
+        context = StorageContext.of(configRoot, "test_world");
+        storage = openStorage();
+    }
+
+    @AfterEach
+    void close() {
+        if (storage != null) storage.close();
+    }
+
+    @Test
+    void savedLayoutLoadsBack() {
+        ChestKey key = block(10, 64, -5);
+        ChestLayout layout = sampleLayout();
+        storage.save(key, layout);
+
+        assertTrue(storage.contains(key));
+        assertSameLayout(layout, load(key));
+
+        reopen();
+        assertTrue(storage.contains(key));
+        assertSameLayout(layout, load(key));
+    }
+
+    @Test
+    void entityAndEnderLayoutsLoadBack() {
+        ChestKey entity = ChestKey.entity(context.worldKey(), UUID.randomUUID());
+        ChestKey ender = ChestKey.ender(context.worldKey());
+        ChestLayout layout = sampleLayout();
+        storage.save(entity, layout);
+        storage.save(ender, layout);
+
+        reopen();
+        assertSameLayout(layout, load(entity));
+        assertSameLayout(layout, load(ender));
+    }
+
+    @Test
+    void deleteRemovesLayout() {
+        ChestKey key = block(0, 70, 0);
+        ChestKey neighbour = block(1, 70, 0);
+        storage.save(key, sampleLayout());
+        storage.save(neighbour, sampleLayout());
+        storage.delete(key);
+
+        assertFalse(storage.contains(key));
+        assertTrue(load(key).isEmpty());
+
+        reopen();
+        assertFalse(storage.contains(key));
+        assertTrue(load(key).isEmpty());
+        // Comparten región: borrar uno no toca al otro
+        assertSameLayout(sampleLayout(), load(neighbour));
+    }
+
+    @Test
+    void emptySaveRemovesLayout() {
+        ChestKey key = block(3, 64, 3);
+        storage.save(key, sampleLayout());
+        storage.save(key, new ChestLayout(SLOTS));
+
+        reopen();
+        assertFalse(storage.contains(key));
+    }
+
+    @Test
+    void moveFollowsSurvivingHalf() {
+        ChestKey from = block(4, 64, 4);
+        // En otra región, para que el movimiento reescriba dos ficheros
+        ChestKey to = block(4 + 512, 64, 4);
+        ChestLayout layout = sampleLayout();
+        storage.save(from, layout);
+        storage.move(from, to);
+
+        assertFalse(storage.contains(from));
+        assertSameLayout(layout, load(to));
+
+        reopen();
+        assertFalse(storage.contains(from));
+        assertTrue(load(from).isEmpty());
+        assertSameLayout(layout, load(to));
+    }
+
+    @Test
+    void journalReplaysAfterCrash() {
+        ChestKey key = block(-20, 40, 33);
+        ChestLayout layout = sampleLayout();
+        storage.save(key, layout);
+        // Una edición suelta confirmada después, que sólo vive en el diario
+        storage.recordEdges(key, 20, 1 << ChestLayout.EDGE_BOTTOM, ColorTable.standardRef(5));
+        layout.setRef(20, ChestLayout.EDGE_BOTTOM, ColorTable.standardRef(5));
+        storage.save(key, layout);
+        // Espera a que el diario esté en disco y abandona la sesión sin close(): nada se compacta
+        writer.flush();
+        storage = openStorage();
+
+        assertTrue(storage.contains(key));
+        assertSameLayout(layout, load(key));
+
+        reopen();
+        assertSameLayout(layout, load(key));
+    }
+
+    @Test
+    void failedJournalWriteReachesTheRegionFiles() throws Exception {
+        ChestKey key = block(30, 64, 30);
+        ChestKey next = block(31, 64, 30);
+        ChestLayout layout = sampleLayout();
+        // Cierra el segmento actual y deja el diario sin carpeta donde crear el siguiente
+        storage.save(block(0, 64, 0), layout);
+        storage.flush();
+        writer.flush();
+        Path journalDir = context.worldDir().resolve("journal");
+        try (Stream<Path> segments = Files.list(journalDir)) {
+            for (Path segment : segments.toList()) Files.delete(segment);
+        }
+        Files.delete(journalDir);
+        Files.createFile(journalDir);
+
+        storage.save(key, layout);
+        writer.flush();
+        // El siguiente commit ve el fallo y escribe lo confirmado en la región
+        storage.save(next, layout);
+        writer.flush();
+        storage = openStorage();
+
+        assertTrue(storage.contains(key));
+        assertSameLayout(layout, load(key));
+    }
+
+    @Test
+    void thousandsOfChestsSurviveReopen() throws Exception {
+        Map<ChestKey, ChestLayout> expected = new LinkedHashMap<>();
+        List<ChestKey> removed = new ArrayList<>();
+        for (int i = 0; i < BULK_BLOCKS; i++) {
+            // Repartidos por 16x16 regiones de cada dimensión
+            int x = (i * 7919) % 8192 - 4096;
+            int z = (i * 104729) % 8192 - 4096;
+            ChestKey key = ChestKey.block(context.worldKey(), DIMENSIONS[i % DIMENSIONS.length], new BlockPos(x, 64 + i % 32, z));
+            ChestLayout layout = bulkLayout(i);
+            storage.save(key, layout);
+            expected.put(key, layout);
+        }
+        for (int i = 0; i < BULK_ENTITIES; i++) {
+            ChestKey key = ChestKey.entity(context.worldKey(), new UUID(0x5EEDL, i));
+            ChestLayout layout = bulkLayout(i);
+            storage.save(key, layout);
+            expected.put(key, layout);
+        }
+
+        int i = 0;
+        for (ChestKey key : new ArrayList<>(expected.keySet())) {
+            if (i % 7 == 0) {
+                storage.delete(key);
+                expected.remove(key);
+                removed.add(key);
+            } else if (i % 11 == 0 && key.entity() == null) {
+                // Por encima de todas las posiciones guardadas: el destino está libre
+                ChestKey to = new ChestKey(key.world(), key.dimension(),
+                        BlockPos.fromLong(key.pos()).up(100).asLong(), null, false);
+                storage.move(key, to);
+                expected.put(to, expected.remove(key));
+                removed.add(key);
+            }
+            i++;
+        }
+        assertAllStored(expected, removed);
+
+        // El diario pasó del umbral: parte de las regiones se escribió antes de cerrar la sesión
+        writer.flush();
+        try (Stream<Path> regions = Files.list(context.worldDir().resolve("regions"))) {
+            assertTrue(regions.findAny().isPresent());
+        }
+
+        reopen();
+        assertAllStored(expected, removed);
+        // Segunda apertura sin cambios: el índice guardado se reutiliza en vez de reconstruirse
+        reopen();
+        assertAllStored(expected, removed);
+    }
+
+    @Test
+    void residentChestNeedsNoFileSystemCalls() {
+        ChestKey key = block(100, 64, 100);
+        ChestLayout layout = sampleLayout();
+        storage.save(key, layout);
+        reopen();
+
+        // La primera lectura carga la región; a partir de ahí todo se resuelve en memoria
+        load(key);
+        StorageMetrics metrics = storage.getMetrics();
+        long fileSystemCalls = metrics.getFileSystemCalls();
+        long regionLoads = metrics.getRegionLoads();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(storage.contains(key));
+            load(key);
+            layout.setRef(i % SLOTS, ChestLayout.EDGE_TOP, ColorTable.standardRef(i % ColorTable.STANDARD_COUNT));
+            storage.save(key, layout);
+        }
+        assertEquals(fileSystemCalls, metrics.getFileSystemCalls());
+        assertEquals(regionLoads, metrics.getRegionLoads());
+        assertSameLayout(layout, load(key));
+    }
+
+    // --- AUXILIARES ---
+
+    private FileSeparatorStorage openStorage() {
+        writer = new WriteBehindQueue();
+        return new FileSeparatorStorage(context, writer, table, LayoutCache.DEFAULT_CAPACITY);
+    }
+
+    private void reopen() {
+        storage.close();
+        storage = openStorage();
+    }
+
+    private ChestKey block(int x, int y, int z) {
+        return ChestKey.block(context.worldKey(), DIMENSION, new BlockPos(x, y, z));
+    }
+
+    private ChestLayout load(ChestKey key) {
+        ChestLayout into = new ChestLayout(SLOTS);
+        storage.load(key, into);
+        return into;
+    }
+
+    // A row split under the first row, a box around slot 13 and a custom colour on the last slot.
+    private static ChestLayout sampleLayout() {
+        ChestLayout layout = new ChestLayout(SLOTS);
+        for (int slot = 0; slot < 9; slot++) {
+            layout.setRef(slot, ChestLayout.EDGE_BOTTOM, ColorTable.standardRef(1));
+        }
+        layout.setRef(13, ChestLayout.EDGE_TOP, ColorTable.standardRef(14));
+        layout.setRef(13, ChestLayout.EDGE_BOTTOM, ColorTable.standardRef(14));
+        layout.setRef(13, ChestLayout.EDGE_LEFT, ColorTable.standardRef(14));
+        layout.setRef(13, ChestLayout.EDGE_RIGHT, ColorTable.standardRef(14));
+        layout.setRef(26, ChestLayout.EDGE_RIGHT, ColorTable.customRef(2));
+        return layout;
+    }
+
+    // Forty distinct layouts of 27 or 54 slots, so identical ones share a template.
+    private static ChestLayout bulkLayout(int i) {
+        int variant = i % 40;
+        ChestLayout layout = new ChestLayout(variant % 2 == 0 ? 54 : SLOTS);
+        for (int slot = 0; slot < 9; slot++) {
+            layout.setRef(slot, ChestLayout.EDGE_BOTTOM, ColorTable.standardRef(variant % ColorTable.STANDARD_COUNT));
+        }
+        layout.setRef(9 + variant % 18, variant % ChestLayout.EDGES_PER_SLOT, ColorTable.standardRef(variant / 4));
+        return layout;
+    }
+
+    private void assertAllStored(Map<ChestKey, ChestLayout> expected, List<ChestKey> removed) {
+        for (Map.Entry<ChestKey, ChestLayout> entry : expected.entrySet()) {
+            assertTrue(storage.contains(entry.getKey()), entry.getKey() + " missing");
+            assertSameLayout(entry.getValue(), load(entry.getKey()));
+        }
+        for (ChestKey key : removed) {
+            assertFalse(storage.contains(key), key + " still stored");
+            assertTrue(load(key).isEmpty(), key + " still has a layout");
+        }
+        for (String dimension : DIMENSIONS) {
+            long[] positions = expected.keySet().stream()
+                    .filter(key -> dimension.equals(key.dimension()))
+                    .mapToLong(ChestKey::pos)
+                    .sorted()
+                    .toArray();
+            long[] stored = storage.getStoredPositions(dimension);
+            Arrays.sort(stored);
+            assertArrayEquals(positions, stored);
+        }
+    }
+
+    private void assertSameLayout(ChestLayout expected, ChestLayout actual) {
+        assertArrayEquals(LayoutCodec.encode(expected, table), LayoutCodec.encode(actual, table));
+    }
+}